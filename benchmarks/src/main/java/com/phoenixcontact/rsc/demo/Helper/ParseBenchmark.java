@@ -0,0 +1,72 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import com.phoenixcontact.ade.commonremoting.CoreType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing the values entered for a number of variables, once boxed with
+ * SubscriptionView.parseToCoreType and once into a reused ParsedValue of the CoreTypeCodec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int variables;
+
+    @Param({ "BOOLEAN", "I4", "U8", "R8" })
+    public CoreType type;
+
+    private String[] values;
+    private CoreTypeCodec.ParsedValue parsed;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        var random = new Random(variables);
+        values = new String[variables];
+        for(int i = 0; i < variables; i++){
+            switch (type){
+                case BOOLEAN:
+                    values[i] = random.nextBoolean() ? "true" : "FALSE";
+                    break;
+                case I4:
+                    values[i] = Integer.toString(random.nextInt());
+                    break;
+                case U8:
+                    values[i] = Long.toUnsignedString(random.nextLong());
+                    break;
+                default:
+                    values[i] = Double.toString(random.nextInt(1000000) / 1000.0);
+            }
+        }
+        parsed = new CoreTypeCodec.ParsedValue();
+    }
+
+    @Benchmark
+    public void parseToCoreType(Blackhole blackhole){
+        for(var value : values)
+            blackhole.consume(SubscriptionView.parseToCoreType(type, value));
+    }
+
+    @Benchmark
+    public void codec(Blackhole blackhole){
+        for(var value : values){
+            blackhole.consume(CoreTypeCodec.parse(type, value, parsed));
+            blackhole.consume(parsed.getLong());
+            blackhole.consume(parsed.getDouble());
+        }
+    }
+}
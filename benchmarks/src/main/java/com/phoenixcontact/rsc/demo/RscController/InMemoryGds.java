@@ -0,0 +1,193 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.ade.commonremoting.CoreType;
+import com.phoenixcontact.ade.commonremoting.utils.AdeObject;
+import com.phoenixcontact.ade.commonremoting.utils.OutParam;
+import com.phoenixcontact.arp.plc.gds.services.*;
+import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * In-memory stand-in for the subscription and data access service of a controller.
+ *
+ * Holds a fixed set of synthetic variables with a mix of core types. readValues alternates between
+ * two prepared frames, which differ in a configurable share of the variables. The frames are created
+ * up front, so the fake itself does not allocate while values are read and the allocations measured
+ * are those of the demo.
+ */
+final class InMemoryGds {
+
+    private static final CoreType[] TYPES = {
+            CoreType.BOOLEAN, CoreType.I2, CoreType.I4, CoreType.U4, CoreType.U8, CoreType.R4, CoreType.R8 };
+
+    private final List<String> uris;
+    private final double changeRate;
+    private final Map<String, AdeObject> initialValues;
+    //the variables of the subscription in the order they were added
+    private final List<String> subscribed;
+    private AdeObject[][] frames;
+    private int tick;
+
+    /**
+     * @param variableCount
+     * The number of variables known to the fake controller.
+     * @param changeRate
+     * The share of the variables that change from one read to the next, between 0 and 1.
+     */
+    InMemoryGds(int variableCount, double changeRate){
+        uris = new ArrayList<>(variableCount);
+        initialValues = new LinkedHashMap<>();
+        subscribed = new ArrayList<>();
+        var random = new Random(variableCount);
+        for(int i = 0; i < variableCount; i++){
+            var uri = "Arp.Plc.Eclr/Bench.var" + i;
+            uris.add(uri);
+            initialValues.put(uri, createValue(TYPES[i % TYPES.length], random.nextInt(1000)));
+        }
+        this.changeRate = changeRate;
+    }
+
+    List<String> getUris(){
+        return uris;
+    }
+
+    @SuppressWarnings("unchecked")
+    ISubscriptionService subscriptionService(){
+        return (ISubscriptionService) Proxy.newProxyInstance(ISubscriptionService.class.getClassLoader(),
+                new Class<?>[]{ ISubscriptionService.class }, (proxy, method, args) -> {
+                    switch (method.getName()){
+                        case "createSubscription":
+                            return 1L;
+                        case "addVariable":
+                            subscribed.add((String) args[1]);
+                            frames = null;
+                            return DataAccessError.NONE;
+                        case "removeVariable":
+                            subscribed.remove((String) args[1]);
+                            frames = null;
+                            return DataAccessError.NONE;
+                        case "getVariableInfos":
+                            ((OutParam<VariableInfo[]>) args[1]).setValue(createInfos());
+                            return DataAccessError.NONE;
+                        case "readValues":
+                            if(frames == null)
+                                frames = createFrames();
+                            ((OutParam<AdeObject[]>) args[1]).setValue(frames[tick++ & 1]);
+                            return DataAccessError.NONE;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "InMemoryGds subscription service";
+                        default:
+                            return method.getReturnType() == DataAccessError.class ? DataAccessError.NONE : null;
+                    }
+                });
+    }
+
+    IDataAccessService dataAccessService(){
+        return (IDataAccessService) Proxy.newProxyInstance(IDataAccessService.class.getClassLoader(),
+                new Class<?>[]{ IDataAccessService.class }, (proxy, method, args) -> {
+                    switch (method.getName()){
+                        case "read":
+                            var names = (String[]) args[0];
+                            var items = new ReadItem[names.length];
+                            for(int i = 0; i < names.length; i++)
+                                items[i] = createReadItem(names[i]);
+                            return items;
+                        case "readSingle":
+                            return createReadItem((String) args[0]);
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "InMemoryGds data access service";
+                        default:
+                            return method.getReturnType() == DataAccessError.class ? DataAccessError.NONE : null;
+                    }
+                });
+    }
+
+    /**
+     * @return
+     * A communication that throws on errors, so a failing benchmark does not go unnoticed.
+     */
+    static CoreCommunication failingCommunication(){
+        return new CoreCommunication(event -> {}, event -> { throw new IllegalStateException(event.getMessage()); },
+                event -> {}, () -> {});
+    }
+
+    private ReadItem createReadItem(String uri){
+        var item = new ReadItem();
+        var value = initialValues.get(uri);
+        item.setError(value != null ? DataAccessError.NONE : DataAccessError.NOT_EXISTS);
+        item.setValue(value);
+        return item;
+    }
+
+    private VariableInfo[] createInfos(){
+        var infos = new VariableInfo[subscribed.size()];
+        for(int i = 0; i < infos.length; i++){
+            infos[i] = new VariableInfo();
+            infos[i].setName(subscribed.get(i));
+        }
+        return infos;
+    }
+
+    //Two frames, the second one differs in every variable picked with the change rate
+    private AdeObject[][] createFrames(){
+        var random = new Random(subscribed.size());
+        var first = new AdeObject[subscribed.size()];
+        var second = new AdeObject[subscribed.size()];
+        for(int i = 0; i < first.length; i++){
+            var initial = initialValues.get(subscribed.get(i));
+            first[i] = initial;
+            second[i] = random.nextDouble() < changeRate
+                    ? createValue(initial.getCoreType(), random.nextInt(1000) + 1000)
+                    : initial;
+        }
+        return new AdeObject[][]{ first, second };
+    }
+
+    private static AdeObject createValue(CoreType type, int seed){
+        var value = new AdeObject();
+        value.setCoreType(type);
+        switch (type){
+            case BOOLEAN:
+                value.setValue(seed % 2 == 0);
+                break;
+            case I2:
+                value.setValue((short) seed);
+                break;
+            case I4:
+                value.setValue(seed);
+                break;
+            case U4:
+                value.setValue((long) seed);
+                break;
+            case U8:
+                value.setValue(BigInteger.valueOf(seed));
+                break;
+            case R4:
+                value.setValue(seed / 7f);
+                break;
+            default:
+                value.setValue(seed / 7d);
+        }
+        return value;
+    }
+}
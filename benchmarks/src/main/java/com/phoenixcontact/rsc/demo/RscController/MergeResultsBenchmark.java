@@ -0,0 +1,43 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.arp.plc.gds.services.DataAccessError;
+import com.phoenixcontact.rsc.demo.Helper.Creator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures mergeResults over one command per variable, e.g. adding every variable to a subscription.
+ * All commands succeed, so every one of them is executed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeResultsBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int variables;
+
+    private Creator<DataAccessError>[] commands;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup(){
+        commands = new Creator[variables];
+        for(int i = 0; i < variables; i++)
+            commands[i] = () -> DataAccessError.NONE;
+    }
+
+    @Benchmark
+    public DataAccessError mergeResults() throws Exception {
+        return GdsServices.mergeResults(commands);
+    }
+}
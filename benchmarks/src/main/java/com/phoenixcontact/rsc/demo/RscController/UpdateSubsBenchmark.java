@@ -0,0 +1,66 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.rsc.demo.Helper.ValueSnapshot;
+import javafx.collections.FXCollections;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one refresh of a subscription group: readValues, the change detection in the value store
+ * and the refresh of the changed views. The ui executor runs the refresh directly, so no FX toolkit is needed.
+ *
+ * Run with -prof gc to see the allocations per refresh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateSubsBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int variables;
+
+    //The share of the variables changing between two refreshes
+    @Param({ "0.0", "0.1", "1.0" })
+    public double changeRate;
+
+    private GdsServices services;
+    private SubscriptionGroup group;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        var gds = new InMemoryGds(variables, changeRate);
+        var updater = new ScheduledThreadPoolExecutor(1);
+        services = new GdsServices(gds.subscriptionService(), gds.dataAccessService(), InMemoryGds.failingCommunication(),
+                FXCollections.observableArrayList(), updater, Runnable::run);
+        var results = services.subscribeAll(gds.getUris(), Collections.emptyList());
+        if(results.size() != variables)
+            throw new IllegalStateException("Subscribing the variables failed");
+
+        //The benchmark calls updateSubs itself, the scheduled task must not run concurrently
+        updater.shutdownNow();
+        updater.awaitTermination(10, TimeUnit.SECONDS);
+
+        group = services.getGroup(GdsServices.DEFAULT_GROUP);
+        //The first refresh reads the variable infos and binds the views to the store
+        group.updateSubs();
+        if(group.getSnapshot().size() != variables)
+            throw new IllegalStateException("The first refresh failed");
+    }
+
+    @Benchmark
+    public ValueSnapshot updateSubs(){
+        group.updateSubs();
+        return group.getSnapshot();
+    }
+}
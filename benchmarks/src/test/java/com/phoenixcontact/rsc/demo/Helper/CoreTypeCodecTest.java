@@ -0,0 +1,266 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import com.phoenixcontact.ade.commonremoting.CoreType;
+import com.phoenixcontact.rsc.demo.Helper.CoreTypeCodec.ParseError;
+import com.phoenixcontact.rsc.demo.Helper.CoreTypeCodec.ParsedValue;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the parser and the formatter of the CoreTypeCodec against the jdk.
+ */
+class CoreTypeCodecTest {
+
+    //the integer types with their smallest and largest value
+    private static final Object[][] INTEGER_BOUNDS = {
+            { CoreType.I1, (long) Byte.MIN_VALUE, (long) Byte.MAX_VALUE },
+            { CoreType.U1, 0L, 255L },
+            { CoreType.I2, (long) Short.MIN_VALUE, (long) Short.MAX_VALUE },
+            { CoreType.U2, 0L, 65535L },
+            { CoreType.I4, (long) Integer.MIN_VALUE, (long) Integer.MAX_VALUE },
+            { CoreType.U4, 0L, 4294967295L },
+            { CoreType.I8, Long.MIN_VALUE, Long.MAX_VALUE }
+    };
+
+    private static final String U8_MAX = "18446744073709551615";
+
+    private final ParsedValue out = new ParsedValue();
+
+    @Test
+    void parsesBoundsOfEachIntegerWidth(){
+        for(var bounds : INTEGER_BOUNDS){
+            var type = (CoreType) bounds[0];
+            for(var i = 1; i <= 2; i++){
+                var value = (long) bounds[i];
+                assertEquals(ParseError.NONE, CoreTypeCodec.parse(type, Long.toString(value), out), type + " " + value);
+                assertEquals(value, out.getLong(), type.toString());
+            }
+        }
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.U8, U8_MAX, out));
+        assertEquals(-1L, out.getLong());
+        assertEquals(new BigInteger(U8_MAX), out.toObject());
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.U8, "0", out));
+        assertEquals(0L, out.getLong());
+    }
+
+    @Test
+    void rejectsValuesOutsideOfEachIntegerWidth(){
+        for(var bounds : INTEGER_BOUNDS){
+            var type = (CoreType) bounds[0];
+            var below = BigInteger.valueOf((long) bounds[1]).subtract(BigInteger.ONE);
+            var above = BigInteger.valueOf((long) bounds[2]).add(BigInteger.ONE);
+            assertEquals(ParseError.OUT_OF_RANGE, CoreTypeCodec.parse(type, below.toString(), out), type + " " + below);
+            assertEquals(ParseError.OUT_OF_RANGE, CoreTypeCodec.parse(type, above.toString(), out), type + " " + above);
+        }
+        assertEquals(ParseError.OUT_OF_RANGE, CoreTypeCodec.parse(CoreType.U8, "18446744073709551616", out));
+        assertEquals(ParseError.OUT_OF_RANGE, CoreTypeCodec.parse(CoreType.U8, "-1", out));
+    }
+
+    @Test
+    void rejectsOverflowOfTheAccumulator(){
+        var huge = "123456789012345678901234567890";
+        for(var type : new CoreType[]{ CoreType.I1, CoreType.I4, CoreType.I8, CoreType.U8 }){
+            assertEquals(ParseError.OUT_OF_RANGE, CoreTypeCodec.parse(type, huge, out), type.toString());
+            assertEquals(ParseError.OUT_OF_RANGE, CoreTypeCodec.parse(type, "-" + huge, out), type.toString());
+        }
+        //an overflow does not hide a syntax error after it
+        assertEquals(ParseError.SYNTAX, CoreTypeCodec.parse(CoreType.I8, huge + "x", out));
+        assertEquals(ParseError.SYNTAX, CoreTypeCodec.parse(CoreType.U8, huge + "x", out));
+    }
+
+    @Test
+    void acceptsSignsAndLeadingZeros(){
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.I4, "+42", out));
+        assertEquals(42, out.getLong());
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.I1, "-0000128", out));
+        assertEquals(-128, out.getLong());
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.U1, "-0", out));
+        assertEquals(0, out.getLong());
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.U8, "-0", out));
+        assertEquals(0, out.getLong());
+    }
+
+    @Test
+    void roundTripsIntegers(){
+        var random = new Random(42);
+        var sb = new StringBuilder();
+        var buffer = new char[24];
+        for(var bounds : INTEGER_BOUNDS){
+            var type = (CoreType) bounds[0];
+            var min = (long) bounds[1];
+            var max = (long) bounds[2];
+            for(var i = 0; i < 1000; i++){
+                var value = i == 0 ? min : i == 1 ? max : clamp(random.nextLong(), min, max);
+                assertRoundTrip(type, value, sb, buffer);
+            }
+        }
+        assertRoundTrip(CoreType.U8, -1L, sb, buffer);
+        assertRoundTrip(CoreType.U8, Long.MIN_VALUE, sb, buffer);
+        for(var i = 0; i < 1000; i++)
+            assertRoundTrip(CoreType.U8, random.nextLong(), sb, buffer);
+    }
+
+    @Test
+    void formatsU8Unsigned(){
+        var sb = new StringBuilder();
+        assertEquals(U8_MAX, CoreTypeCodec.appendLong(sb, CoreType.U8, -1L).toString());
+        var buffer = new char[20];
+        assertEquals(U8_MAX, new String(buffer, 0, CoreTypeCodec.formatLong(buffer, 0, CoreType.U8, -1L)));
+    }
+
+    @Test
+    void roundTripsBooleansAndChars(){
+        var sb = new StringBuilder();
+        var buffer = new char[8];
+        assertRoundTrip(CoreType.BOOLEAN, 1, sb, buffer);
+        assertRoundTrip(CoreType.BOOLEAN, 0, sb, buffer);
+        assertRoundTrip(CoreType.CHAR, 'x', sb, buffer);
+        assertRoundTrip(CoreType.CHAR, '\u00e4', sb, buffer);
+
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.BOOLEAN, "TRUE", out));
+        assertTrue(out.getBoolean());
+        assertEquals(ParseError.SYNTAX, CoreTypeCodec.parse(CoreType.BOOLEAN, "1", out));
+        assertEquals(ParseError.SYNTAX, CoreTypeCodec.parse(CoreType.BOOLEAN, "yes", out));
+        assertEquals(ParseError.SYNTAX, CoreTypeCodec.parse(CoreType.CHAR, "ab", out));
+    }
+
+    @Test
+    void parsesRealsLikeTheJdk(){
+        var texts = new String[]{ "0", "-0", "0.0", "1", "-1.5", "3.141592653589793", "0.1", ".5", "5.", "1e10", "1E-10",
+                "2.5e+3", "123456789012345678901234567890", "0.000000000000000000000001", "1e308", "1e-320", "1e400", "-1e400",
+                "4.9e-324", "1.7976931348623157e308", "3.4028235e38", "1.4e-45", "16777217" };
+        for(var text : texts){
+            assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.R8, text, out), text);
+            assertEquals(Double.parseDouble(text), out.getDouble(), text);
+            assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.R4, text, out), text);
+            assertEquals(Float.parseFloat(text), (float) out.getDouble(), text);
+        }
+    }
+
+    @Test
+    void roundTripsReals(){
+        var random = new Random(42);
+        var sb = new StringBuilder();
+        for(var i = 0; i < 10000; i++){
+            var value = i % 2 == 0 ? Double.longBitsToDouble(random.nextLong()) : random.nextInt(2_000_000) / 1000.0;
+            if(Double.isNaN(value))
+                continue;
+            sb.setLength(0);
+            var text = CoreTypeCodec.appendDouble(sb, CoreType.R8, value).toString();
+            assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.R8, text, out), text);
+            assertEquals(value, out.getDouble(), text);
+
+            var single = Float.intBitsToFloat(random.nextInt());
+            if(Float.isNaN(single))
+                continue;
+            sb.setLength(0);
+            text = CoreTypeCodec.appendDouble(sb, CoreType.R4, single).toString();
+            assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.R4, text, out), text);
+            assertEquals(single, (float) out.getDouble(), text);
+        }
+    }
+
+    @Test
+    void parsesNaNAndInfinity(){
+        for(var type : new CoreType[]{ CoreType.R4, CoreType.R8 }){
+            assertEquals(ParseError.NONE, CoreTypeCodec.parse(type, "NaN", out));
+            assertTrue(Double.isNaN(out.getDouble()));
+            assertEquals(ParseError.NONE, CoreTypeCodec.parse(type, "-NaN", out));
+            assertTrue(Double.isNaN(out.getDouble()));
+            assertEquals(ParseError.NONE, CoreTypeCodec.parse(type, "Infinity", out));
+            assertEquals(Double.POSITIVE_INFINITY, out.getDouble());
+            assertEquals(ParseError.NONE, CoreTypeCodec.parse(type, "+Infinity", out));
+            assertEquals(Double.POSITIVE_INFINITY, out.getDouble());
+            assertEquals(ParseError.NONE, CoreTypeCodec.parse(type, "-Infinity", out));
+            assertEquals(Double.NEGATIVE_INFINITY, out.getDouble());
+
+            //the jdk is case sensitive as well
+            assertEquals(ParseError.SYNTAX, CoreTypeCodec.parse(type, "nan", out));
+            assertEquals(ParseError.SYNTAX, CoreTypeCodec.parse(type, "infinity", out));
+            assertEquals(ParseError.SYNTAX, CoreTypeCodec.parse(type, "Inf", out));
+        }
+
+        var sb = new StringBuilder();
+        assertEquals("NaN", CoreTypeCodec.appendDouble(sb, CoreType.R8, Double.NaN).toString());
+        sb.setLength(0);
+        assertEquals("-Infinity", CoreTypeCodec.appendDouble(sb, CoreType.R4, Double.NEGATIVE_INFINITY).toString());
+    }
+
+    @Test
+    void rejectsMalformedInput(){
+        var integers = new String[]{ "-", "+", "1.0", "1e3", "12a", " 1", "1 ", "0x10", "--1", "1_000" };
+        for(var type : new CoreType[]{ CoreType.I1, CoreType.U1, CoreType.I4, CoreType.I8, CoreType.U8 }){
+            assertEquals(ParseError.EMPTY, CoreTypeCodec.parse(type, "", out), type.toString());
+            for(var text : integers){
+                assertEquals(ParseError.SYNTAX, CoreTypeCodec.parse(type, text, out), type + " '" + text + "'");
+                assertNull(out.toObject());
+            }
+        }
+
+        var reals = new String[]{ "-", ".", "-.", "e5", "1e", "1e+", "1.2.3", "1f", "1d", "0x1p3", " 1", "1 ", "abc", "--1", "1e5.0" };
+        for(var type : new CoreType[]{ CoreType.R4, CoreType.R8 }){
+            assertEquals(ParseError.EMPTY, CoreTypeCodec.parse(type, "", out), type.toString());
+            for(var text : reals)
+                assertEquals(ParseError.SYNTAX, CoreTypeCodec.parse(type, text, out), type + " '" + text + "'");
+        }
+    }
+
+    @Test
+    void parsesRangesOfTheText(){
+        var text = "[-1234|5.5|hello]";
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.I2, text, 1, 6, out));
+        assertEquals(-1234, out.getLong());
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.R8, text.toCharArray(), 7, 10, out));
+        assertEquals(5.5, out.getDouble());
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.STRING, text.toCharArray(), 11, 16, out));
+        assertEquals("hello", out.toObject());
+        assertEquals(ParseError.EMPTY, CoreTypeCodec.parse(CoreType.I4, text, 3, 3, out));
+
+        //an empty string is a valid STRING value
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(CoreType.STRING, "", out));
+        assertEquals("", out.toObject());
+    }
+
+    @Test
+    void boxesLikeParseToCoreType(){
+        CoreTypeCodec.parse(CoreType.I1, "-5", out);
+        assertEquals((byte) -5, out.toObject());
+        CoreTypeCodec.parse(CoreType.U1, "200", out);
+        assertEquals((short) 200, out.toObject());
+        CoreTypeCodec.parse(CoreType.U2, "65535", out);
+        assertEquals(65535, out.toObject());
+        CoreTypeCodec.parse(CoreType.U4, "4294967295", out);
+        assertEquals(4294967295L, out.toObject());
+        CoreTypeCodec.parse(CoreType.R4, "0.1", out);
+        assertEquals(0.1f, out.toObject());
+        CoreTypeCodec.parse(CoreType.CHAR, "c", out);
+        assertEquals('c', out.toObject());
+    }
+
+    //Formats the value both ways and parses it back
+    private void assertRoundTrip(CoreType type, long value, StringBuilder sb, char[] buffer){
+        sb.setLength(0);
+        var text = CoreTypeCodec.appendLong(sb, type, value).toString();
+        var end = CoreTypeCodec.formatLong(buffer, 2, type, value);
+        assertEquals(text, new String(buffer, 2, end - 2), type + " " + value);
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(type, text, out), type + " " + text);
+        assertEquals(value, out.getLong(), type + " " + text);
+        assertEquals(ParseError.NONE, CoreTypeCodec.parse(type, buffer, 2, end, out), type + " " + text);
+        assertEquals(value, out.getLong(), type + " " + text);
+    }
+
+    private static long clamp(long value, long min, long max){
+        if(min == Long.MIN_VALUE && max == Long.MAX_VALUE)
+            return value;
+        return min + Math.floorMod(value, max - min + 1);
+    }
+}
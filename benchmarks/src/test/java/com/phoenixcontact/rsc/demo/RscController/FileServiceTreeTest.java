@@ -0,0 +1,258 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.arp.system.commons.services.io.FileSystemEntry;
+import com.phoenixcontact.arp.system.commons.services.io.IDirectoryService;
+import com.phoenixcontact.arp.system.commons.services.io.IFileService;
+import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import com.phoenixcontact.rsc.demo.Helper.PlaceholderEntry;
+import com.phoenixcontact.rsc.demo.Helper.RemoteTreeItem;
+import javafx.scene.control.TreeItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Expands, collapses and refreshes the remote tree of the FileService against a fake directory service
+ * and counts the enumerations on the plc.
+ *
+ * A single thread takes the role of the FX thread, every change of the tree is made on it.
+ */
+class FileServiceTreeTest {
+
+    //The entries of the fake plc by folder
+    private final Map<String, List<FileSystemEntry>> folders = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> enumerations = new ConcurrentHashMap<>();
+    //Blocks the enumerations while set
+    private volatile CountDownLatch gate;
+    private volatile boolean failing;
+
+    private ExecutorService ui;
+    private FileService service;
+    private RemoteTreeItem root;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        folder("/", entry("/opt", true), entry("/log.txt", false));
+        folder("/opt", entry("/opt/plcnext", true), entry("/opt/readme", false));
+        folder("/opt/plcnext", entry("/opt/plcnext/config", false));
+
+        var directoryService = (IDirectoryService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ IDirectoryService.class }, (proxy, method, args) -> {
+                    if(!method.getName().equals("enumerateFileSystemEntries"))
+                        throw new UnsupportedOperationException(method.getName());
+                    var path = (String) args[0];
+                    enumerations.computeIfAbsent(path, x -> new AtomicInteger()).incrementAndGet();
+                    var blocked = gate;
+                    if(blocked != null)
+                        blocked.await(5, TimeUnit.SECONDS);
+                    if(failing)
+                        throw new IllegalStateException("link down");
+                    return folders.getOrDefault(path, List.of()).toArray(new FileSystemEntry[0]);
+                });
+        var fileService = (IFileService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ IFileService.class }, (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        var communication = new CoreCommunication(x -> {}, x -> {}, x -> {}, () -> {});
+
+        ui = Executors.newSingleThreadExecutor();
+        service = new FileService(fileService, directoryService, communication, ui);
+        root = onUi(() -> service.createRootItem("/"));
+    }
+
+    @AfterEach
+    void tearDown(){
+        service.close();
+        ui.shutdownNow();
+    }
+
+    @Test
+    void expandCollapseCyclesEnumerateOnce() throws Exception {
+        expand(root);
+        var children = onUi(() -> new ArrayList<>(root.getChildren()));
+        assertEquals(List.of("/opt", "/log.txt"), paths(root));
+
+        for(var i = 0; i < 100; i++){
+            onUi(() -> root.setExpanded(false));
+            expand(root);
+        }
+        assertEquals(1, enumerations("/"));
+        //collapsing keeps the nodes, so the state of the subfolders survives
+        assertEquals(children, onUi(() -> new ArrayList<>(root.getChildren())));
+    }
+
+    @Test
+    void subfoldersAreLoadedOnDemand() throws Exception {
+        expand(root);
+        assertEquals(0, enumerations("/opt"));
+        var opt = child(root, "/opt");
+        var file = child(root, "/log.txt");
+        assertTrue(file.isLeaf());
+        assertFalse(opt.isLeaf());
+
+        expand(opt);
+        expand(child(opt, "/opt/plcnext"));
+        onUi(() -> root.setExpanded(false));
+        expand(root);
+        expand(opt);
+        assertEquals(1, enumerations("/"));
+        assertEquals(1, enumerations("/opt"));
+        assertEquals(1, enumerations("/opt/plcnext"));
+        assertEquals(0, enumerations("/log.txt"));
+    }
+
+    @Test
+    void refreshShowsChangesAndKeepsUnchangedNodes() throws Exception {
+        service.setCacheTtl(0);
+        expand(root);
+        var opt = child(root, "/opt");
+        expand(opt);
+
+        folder("/", entry("/opt", true), entry("/new", true));
+        onUi(() -> root.reload());
+        await(root);
+        assertEquals(List.of("/opt", "/new"), paths(root));
+        assertEquals(2, enumerations("/"));
+        //the subfolder is neither replaced nor enumerated again
+        assertSame(opt, child(root, "/opt"));
+        assertTrue(onUi(opt::isExpanded));
+        assertEquals(1, enumerations("/opt"));
+    }
+
+    @Test
+    void refreshOfACollapsedFolderWaitsForTheNextExpansion() throws Exception {
+        service.setCacheTtl(0);
+        expand(root);
+        onUi(() -> root.setExpanded(false));
+        onUi(() -> root.reload());
+        assertEquals(1, enumerations("/"));
+
+        expand(root);
+        assertEquals(2, enumerations("/"));
+        onUi(() -> root.setExpanded(false));
+        expand(root);
+        assertEquals(2, enumerations("/"));
+    }
+
+    @Test
+    void refreshUsesTheCacheUntilItIsCleared() throws Exception {
+        expand(root);
+        onUi(() -> root.reload());
+        await(root);
+        assertEquals(1, enumerations("/"));
+
+        service.clearCache();
+        onUi(() -> root.reload());
+        await(root);
+        assertEquals(2, enumerations("/"));
+    }
+
+    @Test
+    void concurrentLoadsShareOneEnumeration() throws Exception {
+        gate = new CountDownLatch(1);
+        var first = onUi(() -> {
+            root.setExpanded(true);
+            return root.ensureLoaded();
+        });
+        var second = onUi(() -> service.addFilesToNode(root));
+        assertSame(first, second);
+        //the placeholder is shown while the folder is enumerated
+        assertTrue(onUi(() -> root.getChildren().get(0).getValue()) instanceof PlaceholderEntry);
+
+        gate.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(1, enumerations("/"));
+        assertEquals(List.of("/opt", "/log.txt"), paths(root));
+    }
+
+    @Test
+    void failedLoadIsRetriedOnTheNextExpansion() throws Exception {
+        failing = true;
+        var failed = onUi(() -> {
+            root.setExpanded(true);
+            //the load started by the expansion
+            return root.ensureLoaded();
+        });
+        assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertTrue(onUi(() -> root.getChildren().isEmpty()));
+
+        failing = false;
+        onUi(() -> root.setExpanded(false));
+        expand(root);
+        assertEquals(2, enumerations("/"));
+        assertEquals(List.of("/opt", "/log.txt"), paths(root));
+    }
+
+    private void folder(String path, FileSystemEntry... entries){
+        folders.put(path, List.of(entries));
+    }
+
+    private static FileSystemEntry entry(String path, boolean directory){
+        var entry = new FileSystemEntry();
+        entry.setPath(path);
+        entry.setDirectory(directory);
+        entry.setFile(!directory);
+        return entry;
+    }
+
+    private int enumerations(String path){
+        var count = enumerations.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    //Expands the node like the tree view does and waits for its children
+    private void expand(RemoteTreeItem node) throws Exception {
+        onUi(() -> {
+            node.setExpanded(true);
+            return node.ensureLoaded();
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private void await(RemoteTreeItem node) throws Exception {
+        onUi(node::ensureLoaded).get(5, TimeUnit.SECONDS);
+    }
+
+    private RemoteTreeItem child(TreeItem<FileSystemEntry> node, String path) throws Exception {
+        return onUi(() -> (RemoteTreeItem) node.getChildren().stream()
+                .filter(x -> x.getValue().getPath().equals(path))
+                .findFirst()
+                .orElseThrow());
+    }
+
+    private List<String> paths(TreeItem<FileSystemEntry> node) throws Exception {
+        return onUi(() -> {
+            var paths = new ArrayList<String>();
+            for(var child : node.getChildren())
+                paths.add(child.getValue().getPath());
+            return paths;
+        });
+    }
+
+    private <T> T onUi(Callable<T> action) throws Exception {
+        return ui.submit(action).get(5, TimeUnit.SECONDS);
+    }
+
+    private void onUi(Runnable action) throws Exception {
+        ui.submit(action).get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,120 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import com.phoenixcontact.arp.plc.domain.services.PlcState;
+
+import java.util.List;
+
+/**
+ * The outcome of a plc command, e.g. a cold start, with the duration of each step.
+ */
+public final class CommandReport {
+
+    /**
+     * One call of a service or the wait for a state of the plc.
+     */
+    public static final class Step {
+        private final String name;
+        private final long millis;
+
+        public Step(String name, long millis){
+            this.name = name;
+            this.millis = millis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public String toString(){
+            return name + " " + millis + " ms";
+        }
+    }
+
+    private final String host;
+    private final String command;
+    private final List<Step> steps;
+    private final List<PlcState> state;
+    private final String error;
+    private final long elapsedMillis;
+
+    /**
+     * @param host
+     * @param command
+     * @param steps
+     * The completed steps, including the failed one.
+     * @param state
+     * The state of the plc when the command completed, may be null if unknown.
+     * @param error
+     * Null if all steps succeeded.
+     * @param elapsedMillis
+     */
+    public CommandReport(String host, String command, List<Step> steps, List<PlcState> state, String error, long elapsedMillis){
+        this.host = host;
+        this.command = command;
+        this.steps = List.copyOf(steps);
+        this.state = state;
+        this.error = error;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    public List<PlcState> getState() {
+        return state;
+    }
+
+    /**
+     * @return
+     * The step that failed and the reason or null.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString(){
+        var sb = new StringBuilder();
+        sb.append(command).append(" on ").append(host);
+        sb.append(error == null ? " completed" : " failed").append(" in ").append(elapsedMillis).append(" ms");
+        if(!steps.isEmpty()){
+            sb.append(" (");
+            for(int i = 0; i < steps.size(); i++){
+                if(i > 0)
+                    sb.append(", ");
+                sb.append(steps.get(i));
+            }
+            sb.append(')');
+        }
+        if(error != null)
+            sb.append(": ").append(error);
+        return sb.toString();
+    }
+}
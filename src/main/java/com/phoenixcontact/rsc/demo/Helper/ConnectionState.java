@@ -0,0 +1,22 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+/**
+ * The state of a connection to a controller.
+ */
+public enum ConnectionState {
+    //Not connected yet
+    DISCONNECTED,
+    //The connection is established
+    CONNECTING,
+    //Connected and the last health check succeeded
+    CONNECTED,
+    //Connecting or the last health check failed, a reconnect is needed
+    FAILED,
+    //Closed for good, the credentials are cleared
+    CLOSED
+}
@@ -0,0 +1,547 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import com.phoenixcontact.ade.commonremoting.CoreType;
+
+import java.math.BigInteger;
+
+/**
+ * Parses and formats values of all scalar CoreTypes without intermediate objects.
+ *
+ * Parsing works on a CharSequence or a range of a char[] and writes the result into a reusable
+ * ParsedValue. Errors are reported with a ParseError instead of null or exceptions.
+ * U8 values are handled as unsigned long. Only R4 and R8 values with more than 15 significant digits
+ * or a large exponent fall back to the parser of the jdk, which allocates a string.
+ *
+ * Formatting appends to a StringBuilder or writes into a char[].
+ */
+public final class CoreTypeCodec {
+
+    /**
+     * The result of a parse call.
+     */
+    public enum ParseError {
+        NONE,
+        //the text is empty
+        EMPTY,
+        //the text is no valid literal of the type
+        SYNTAX,
+        //the text is a valid number, but does not fit into the type
+        OUT_OF_RANGE,
+        //the type can not be parsed from text
+        UNSUPPORTED
+    }
+
+    /**
+     * Holds the result of a parse call. Can be reused for any number of calls.
+     */
+    public static final class ParsedValue {
+        private CoreType type;
+        private ParseError error;
+        private long integer;
+        private double real;
+        private boolean bool;
+        //the parsed text, only kept for STRING values
+        private CharSequence sequence;
+        private char[] chars;
+        private int start;
+        private int end;
+
+        public CoreType getType(){
+            return type;
+        }
+
+        public ParseError getError(){
+            return error;
+        }
+
+        /**
+         * @return
+         * The value of BOOLEAN, CHAR and the integer types. U8 is unsigned.
+         */
+        public long getLong(){
+            return integer;
+        }
+
+        /**
+         * @return
+         * The value of R4 and R8.
+         */
+        public double getDouble(){
+            return real;
+        }
+
+        public boolean getBoolean(){
+            return bool;
+        }
+
+        /**
+         * Boxes the value with the same types as SubscriptionView.parseToCoreType.
+         * @return
+         * The value or null if parsing failed.
+         */
+        public Object toObject(){
+            if(error != ParseError.NONE)
+                return null;
+            switch (type){
+                case BOOLEAN:
+                    return bool;
+                case CHAR:
+                    return (char) integer;
+                case I1:
+                    return (byte) integer;
+                case U1:
+                case I2:
+                    return (short) integer;
+                case U2:
+                case I4:
+                    return (int) integer;
+                case U4:
+                case I8:
+                    return integer;
+                case U8:
+                    return integer >= 0
+                            ? BigInteger.valueOf(integer)
+                            : BigInteger.valueOf(integer).add(BigInteger.ONE.shiftLeft(64));
+                case R4:
+                    return (float) real;
+                case R8:
+                    return real;
+                case STRING:
+                    return chars != null ? new String(chars, start, end - start) : sequence.subSequence(start, end).toString();
+                default:
+                    return null;
+            }
+        }
+
+        private ParseError fail(ParseError error){
+            this.error = error;
+            return error;
+        }
+    }
+
+    //exactly representable powers of ten
+    private static final double[] DOUBLE_POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final float[] FLOAT_POW10 = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+    //limits for unsigned 64 bit parsing
+    private static final long U8_LIMIT = Long.divideUnsigned(-1L, 10);
+    private static final long U8_LAST_DIGIT = Long.remainderUnsigned(-1L, 10);
+
+    private CoreTypeCodec(){
+    }
+
+    /**
+     * Parses the whole text.
+     * @see #parse(CoreType, CharSequence, int, int, ParsedValue)
+     */
+    public static ParseError parse(CoreType type, CharSequence text, ParsedValue out){
+        return parse(type, text, null, 0, text.length(), out);
+    }
+
+    /**
+     * Parses text[start, end) to a value of the type.
+     * @param type
+     * @param text
+     * @param start
+     * @param end
+     * @param out
+     * Receives the value and the error code.
+     * @return
+     * NONE or the reason why parsing failed.
+     */
+    public static ParseError parse(CoreType type, CharSequence text, int start, int end, ParsedValue out){
+        return parse(type, text, null, start, end, out);
+    }
+
+    /**
+     * Parses buffer[start, end) to a value of the type.
+     * @see #parse(CoreType, CharSequence, int, int, ParsedValue)
+     */
+    public static ParseError parse(CoreType type, char[] buffer, int start, int end, ParsedValue out){
+        return parse(type, null, buffer, start, end, out);
+    }
+
+    //Exactly one of sequence and chars is set
+    private static ParseError parse(CoreType type, CharSequence sequence, char[] chars, int start, int end, ParsedValue out){
+        out.type = type;
+        out.error = ParseError.NONE;
+        out.sequence = null;
+        out.chars = null;
+
+        if(type != CoreType.STRING && start >= end)
+            return out.fail(ParseError.EMPTY);
+
+        switch (type){
+            case BOOLEAN:
+                if(matches(sequence, chars, start, end, "true"))
+                    out.bool = true;
+                else if(matches(sequence, chars, start, end, "false"))
+                    out.bool = false;
+                else
+                    return out.fail(ParseError.SYNTAX);
+                out.integer = out.bool ? 1 : 0;
+                return ParseError.NONE;
+            case CHAR:
+                if(end - start != 1)
+                    return out.fail(ParseError.SYNTAX);
+                out.integer = charAt(sequence, chars, start);
+                return ParseError.NONE;
+            case I1:
+                return parseSigned(sequence, chars, start, end, Byte.MIN_VALUE, Byte.MAX_VALUE, out);
+            case U1:
+                return parseSigned(sequence, chars, start, end, 0, (1 << 8) - 1, out);
+            case I2:
+                return parseSigned(sequence, chars, start, end, Short.MIN_VALUE, Short.MAX_VALUE, out);
+            case U2:
+                return parseSigned(sequence, chars, start, end, 0, (1 << 16) - 1, out);
+            case I4:
+                return parseSigned(sequence, chars, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE, out);
+            case U4:
+                return parseSigned(sequence, chars, start, end, 0, (1L << 32) - 1, out);
+            case I8:
+                return parseSigned(sequence, chars, start, end, Long.MIN_VALUE, Long.MAX_VALUE, out);
+            case U8:
+                return parseUnsigned(sequence, chars, start, end, out);
+            case R4:
+            case R8:
+                return parseReal(type, sequence, chars, start, end, out);
+            case STRING:
+                out.sequence = sequence;
+                out.chars = chars;
+                out.start = start;
+                out.end = end;
+                return ParseError.NONE;
+            default:
+                return out.fail(ParseError.UNSUPPORTED);
+        }
+    }
+
+    private static char charAt(CharSequence sequence, char[] chars, int index){
+        return chars != null ? chars[index] : sequence.charAt(index);
+    }
+
+    //case insensitive comparison with a lower case ascii literal
+    private static boolean matches(CharSequence sequence, char[] chars, int start, int end, String literal){
+        if(end - start != literal.length())
+            return false;
+        for(int i = 0; i < literal.length(); i++){
+            var c = charAt(sequence, chars, start + i);
+            if(c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+            if(c != literal.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Parses a decimal number with optional sign into [min, max].
+     * Accumulates negatively like Long.parseLong, so Long.MIN_VALUE can be parsed.
+     */
+    private static ParseError parseSigned(CharSequence sequence, char[] chars, int start, int end, long min, long max, ParsedValue out){
+        var i = start;
+        var negative = false;
+        var first = charAt(sequence, chars, i);
+        if(first == '-' || first == '+'){
+            negative = first == '-';
+            i++;
+            if(i == end)
+                return out.fail(ParseError.SYNTAX);
+        }
+
+        var limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        var multmin = limit / 10;
+        long result = 0;
+        var overflow = false;
+        for(; i < end; i++){
+            var digit = charAt(sequence, chars, i) - '0';
+            if(digit < 0 || digit > 9)
+                return out.fail(ParseError.SYNTAX);
+            //keep checking the syntax of the remaining digits after an overflow
+            if(overflow || result < multmin || result * 10 < limit + digit){
+                overflow = true;
+                continue;
+            }
+            result = result * 10 - digit;
+        }
+        if(overflow)
+            return out.fail(ParseError.OUT_OF_RANGE);
+
+        var value = negative ? result : -result;
+        if(value < min || value > max)
+            return out.fail(ParseError.OUT_OF_RANGE);
+        out.integer = value;
+        return ParseError.NONE;
+    }
+
+    //Parses a decimal number in [0, 2^64 - 1] into an unsigned long
+    private static ParseError parseUnsigned(CharSequence sequence, char[] chars, int start, int end, ParsedValue out){
+        var i = start;
+        var first = charAt(sequence, chars, i);
+        var negative = first == '-';
+        if(first == '-' || first == '+'){
+            i++;
+            if(i == end)
+                return out.fail(ParseError.SYNTAX);
+        }
+
+        long result = 0;
+        var overflow = false;
+        for(; i < end; i++){
+            var digit = charAt(sequence, chars, i) - '0';
+            if(digit < 0 || digit > 9)
+                return out.fail(ParseError.SYNTAX);
+            if(overflow || Long.compareUnsigned(result, U8_LIMIT) > 0 || (result == U8_LIMIT && digit > U8_LAST_DIGIT)){
+                overflow = true;
+                continue;
+            }
+            result = result * 10 + digit;
+        }
+        //-0 is accepted like BigInteger does
+        if(overflow || (negative && result != 0))
+            return out.fail(ParseError.OUT_OF_RANGE);
+        out.integer = result;
+        return ParseError.NONE;
+    }
+
+    /*
+     * Parses R4 and R8 values. Accepts the same syntax as Double.parseDouble for decimal numbers,
+     * NaN and Infinity, except for hexadecimal literals, type suffixes and surrounding whitespace.
+     * If the mantissa and the power of ten are exactly representable, the result is computed with
+     * a single multiplication or division, which is correctly rounded. Otherwise the jdk parser is used.
+     */
+    private static ParseError parseReal(CoreType type, CharSequence sequence, char[] chars, int start, int end, ParsedValue out){
+        var i = start;
+        var negative = false;
+        var first = charAt(sequence, chars, i);
+        if(first == '-' || first == '+'){
+            negative = first == '-';
+            i++;
+        }
+
+        if(matches(sequence, chars, i, end, "nan") && i == start + (first == '-' || first == '+' ? 1 : 0)){
+            if(!exactCase(sequence, chars, i, "NaN"))
+                return out.fail(ParseError.SYNTAX);
+            out.real = Double.NaN;
+            return ParseError.NONE;
+        }
+        if(end - i == 8 && exactCase(sequence, chars, i, "Infinity")){
+            out.real = negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            return ParseError.NONE;
+        }
+
+        long mantissa = 0;
+        var digits = 0;
+        var exponent = 0;
+        var anyDigit = false;
+        var dot = false;
+        for(; i < end; i++){
+            var c = charAt(sequence, chars, i);
+            if(c >= '0' && c <= '9'){
+                anyDigit = true;
+                //leading zeros do not count as significant digits
+                if(mantissa == 0 && c == '0'){
+                    if(dot)
+                        exponent--;
+                    continue;
+                }
+                if(digits < 19){
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if(dot)
+                        exponent--;
+                }
+                else{
+                    //too many digits for the fast path, they are not needed for it anyway
+                    digits++;
+                    if(!dot)
+                        exponent++;
+                }
+            }
+            else if(c == '.' && !dot)
+                dot = true;
+            else
+                break;
+        }
+        if(!anyDigit)
+            return out.fail(ParseError.SYNTAX);
+
+        if(i < end){
+            var c = charAt(sequence, chars, i);
+            if(c != 'e' && c != 'E')
+                return out.fail(ParseError.SYNTAX);
+            i++;
+            if(i == end)
+                return out.fail(ParseError.SYNTAX);
+            var expNegative = false;
+            c = charAt(sequence, chars, i);
+            if(c == '-' || c == '+'){
+                expNegative = c == '-';
+                i++;
+                if(i == end)
+                    return out.fail(ParseError.SYNTAX);
+            }
+            var exp = 0;
+            for(; i < end; i++){
+                var digit = charAt(sequence, chars, i) - '0';
+                if(digit < 0 || digit > 9)
+                    return out.fail(ParseError.SYNTAX);
+                if(exp < 100000)
+                    exp = exp * 10 + digit;
+            }
+            exponent += expNegative ? -exp : exp;
+        }
+
+        double value;
+        if(mantissa == 0)
+            value = 0;
+        else if(type == CoreType.R4 && digits <= 7 && Math.abs(exponent) < FLOAT_POW10.length)
+            value = exponent < 0 ? (float) mantissa / FLOAT_POW10[-exponent] : (float) mantissa * FLOAT_POW10[exponent];
+        else if(type == CoreType.R8 && digits <= 15 && Math.abs(exponent) < DOUBLE_POW10.length)
+            value = exponent < 0 ? (double) mantissa / DOUBLE_POW10[-exponent] : (double) mantissa * DOUBLE_POW10[exponent];
+        else{
+            //slow path, allocates
+            var text = chars != null ? new String(chars, start, end - start) : sequence.subSequence(start, end).toString();
+            out.real = type == CoreType.R4 ? Float.parseFloat(text) : Double.parseDouble(text);
+            return ParseError.NONE;
+        }
+        out.real = negative ? -value : value;
+        return ParseError.NONE;
+    }
+
+    private static boolean exactCase(CharSequence sequence, char[] chars, int start, String literal){
+        for(int i = 0; i < literal.length(); i++)
+            if(charAt(sequence, chars, start + i) != literal.charAt(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Appends an integer value of the type. U8 is formatted unsigned, CHAR as character and BOOLEAN as true or false.
+     * @param sb
+     * @param type
+     * @param value
+     * @return
+     * sb
+     */
+    public static StringBuilder appendLong(StringBuilder sb, CoreType type, long value){
+        switch (type){
+            case BOOLEAN:
+                return sb.append(value != 0);
+            case CHAR:
+                return sb.append((char) value);
+            case U8:
+                if(value < 0){
+                    //split off the last digit, the rest fits into a signed long
+                    var quotient = Long.divideUnsigned(value, 10);
+                    return sb.append(quotient).append((char) ('0' + Long.remainderUnsigned(value, 10)));
+                }
+                return sb.append(value);
+            default:
+                return sb.append(value);
+        }
+    }
+
+    /**
+     * Appends a floating point value. R4 values are formatted with float precision.
+     * @param sb
+     * @param type
+     * @param value
+     * @return
+     * sb
+     */
+    public static StringBuilder appendDouble(StringBuilder sb, CoreType type, double value){
+        return type == CoreType.R4 ? sb.append((float) value) : sb.append(value);
+    }
+
+    /**
+     * Appends the value of a slot of the store.
+     * @param sb
+     * @param store
+     * @param slot
+     * @return
+     * sb. Nothing is appended for empty slots.
+     */
+    public static StringBuilder append(StringBuilder sb, ValueStore store, int slot){
+        var type = store.getType(slot);
+        if(type == null)
+            return sb;
+        switch (type){
+            case BOOLEAN:
+                return sb.append(store.getBoolean(slot));
+            case R4:
+            case R8:
+                return appendDouble(sb, type, store.getDouble(slot));
+            case CHAR:
+            case I1:
+            case U1:
+            case I2:
+            case U2:
+            case I4:
+            case U4:
+            case I8:
+            case U8:
+                return appendLong(sb, type, store.getLong(slot));
+            default:
+                return sb.append(store.getValue(slot));
+        }
+    }
+
+    /**
+     * Writes an integer value of the type into the buffer.
+     * @param buffer
+     * Must have room for at least 20 characters after offset.
+     * @param offset
+     * @param type
+     * @param value
+     * @return
+     * The offset after the last written character.
+     */
+    public static int formatLong(char[] buffer, int offset, CoreType type, long value){
+        switch (type){
+            case BOOLEAN:
+                return copy(value != 0 ? "true" : "false", buffer, offset);
+            case CHAR:
+                buffer[offset] = (char) value;
+                return offset + 1;
+            case U8:
+                if(value < 0){
+                    var end = formatLong(buffer, offset, CoreType.I8, Long.divideUnsigned(value, 10));
+                    buffer[end] = (char) ('0' + Long.remainderUnsigned(value, 10));
+                    return end + 1;
+                }
+                break;
+            default:
+                break;
+        }
+
+        if(value == Long.MIN_VALUE)
+            return copy("-9223372036854775808", buffer, offset);
+        if(value < 0){
+            buffer[offset++] = '-';
+            value = -value;
+        }
+        //count the digits, then write them from the back
+        var length = 1;
+        for(var rest = value / 10; rest != 0; rest /= 10)
+            length++;
+        for(int i = offset + length - 1; i >= offset; i--){
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + length;
+    }
+
+    private static int copy(String text, char[] buffer, int offset){
+        text.getChars(0, text.length(), buffer, offset);
+        return offset + text.length();
+    }
+}
@@ -0,0 +1,134 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Collects changed items from background threads and applies them on the FX thread in one pulse.
+ *
+ * At most one runnable is queued on the FX thread at any time. Items submitted while a pulse
+ * is pending are merged into it, an item that is already pending is not added a second time.
+ * Because the consumer reads the latest state of the item when the pulse runs,
+ * intermediate values are dropped when the ui falls behind.
+ *
+ * @param <T>
+ * The type of the published items. Items are compared by equals.
+ */
+public class FxBatchPublisher<T> {
+
+    private final Consumer<T> apply;
+    private final Executor uiExecutor;
+
+    //guarded by itself
+    private final Set<T> pending;
+    private boolean scheduled;
+
+    private final AtomicLong published;
+    private final AtomicLong coalesced;
+    private final AtomicLong pulses;
+
+    /**
+     * @param apply
+     * Is called on the FX thread for every item of a pulse.
+     */
+    public FxBatchPublisher(Consumer<T> apply){
+        this(apply, Platform::runLater);
+    }
+
+    /**
+     * @param apply
+     * Is called by the uiExecutor for every item of a pulse.
+     * @param uiExecutor
+     * Executes the pulses. Normally Platform::runLater.
+     */
+    public FxBatchPublisher(Consumer<T> apply, Executor uiExecutor){
+        this.apply = apply;
+        this.uiExecutor = uiExecutor;
+        pending = new LinkedHashSet<>();
+        scheduled = false;
+        published = new AtomicLong();
+        coalesced = new AtomicLong();
+        pulses = new AtomicLong();
+    }
+
+    /**
+     * Queues the items for the next pulse and schedules it, if it is not scheduled yet.
+     * @param items
+     */
+    public void submit(Collection<? extends T> items){
+        if(items.isEmpty())
+            return;
+
+        boolean schedule;
+        synchronized (pending){
+            for(var item : items){
+                if(!pending.add(item))
+                    coalesced.incrementAndGet();
+            }
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if(schedule)
+            uiExecutor.execute(this::pulse);
+    }
+
+    //Runs on the FX thread and applies everything collected so far
+    private void pulse(){
+        ArrayList<T> batch;
+        synchronized (pending){
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            scheduled = false;
+        }
+        for(var item : batch)
+            apply.accept(item);
+        published.addAndGet(batch.size());
+        pulses.incrementAndGet();
+    }
+
+    /**
+     * Drops all pending items, e.g. when the items are removed from the view.
+     */
+    public void clear(){
+        synchronized (pending){
+            coalesced.addAndGet(pending.size());
+            pending.clear();
+        }
+    }
+
+    /**
+     * @return
+     * The number of updates which were never shown, because a newer update of the same item replaced them.
+     */
+    public long getCoalescedCount(){
+        return coalesced.get();
+    }
+
+    /**
+     * @return
+     * The number of items applied on the FX thread.
+     */
+    public long getPublishedCount(){
+        return published.get();
+    }
+
+    /**
+     * @return
+     * The number of runnables executed on the FX thread.
+     */
+    public long getPulseCount(){
+        return pulses.get();
+    }
+}
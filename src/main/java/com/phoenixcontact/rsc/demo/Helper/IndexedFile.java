@@ -0,0 +1,77 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import java.util.Locale;
+
+/**
+ * A file or folder found by the RemoteFileIndex.
+ */
+public final class IndexedFile {
+
+    private final String path;
+    private final String name;
+    //the name in lower case, used for case insensitive searches
+    private final String lowerName;
+    private final boolean directory;
+    private final long size;
+    private final long modifiedMillis;
+
+    public IndexedFile(String path, boolean directory, long size, long modifiedMillis){
+        this.path = path;
+        this.name = path.substring(Math.min(path.lastIndexOf('/') + 1, path.length() - 1));
+        this.lowerName = name.toLowerCase(Locale.ROOT);
+        this.directory = directory;
+        this.size = size;
+        this.modifiedMillis = modifiedMillis;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLowerName() {
+        return lowerName;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return
+     * The size in bytes or -1 if it is unknown, e.g. for folders or when the index was built without attributes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return
+     * The time of the last modification in milliseconds since 1970 or -1 if it is unknown.
+     */
+    public long getModifiedMillis() {
+        return modifiedMillis;
+    }
+
+    @Override
+    public String toString(){
+        var sb = new StringBuilder();
+        sb.append(path);
+        if(directory)
+            sb.append('/');
+        else if(size >= 0){
+            sb.append(", ");
+            sb.append(size);
+            sb.append(" B");
+        }
+        return sb.toString();
+    }
+}
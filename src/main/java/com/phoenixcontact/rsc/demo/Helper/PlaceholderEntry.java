@@ -0,0 +1,33 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+/**
+ * Shown in the tree view instead of a file, e.g. while a folder is loaded or for the next page of a large folder.
+ * It is neither a file nor a directory and must not be passed to the file services.
+ */
+public class PlaceholderEntry extends CustomFileSystemEntry {
+
+    private final String text;
+
+    /**
+     * @param folder
+     * The path of the folder the placeholder is shown in.
+     * @param text
+     * The text displayed in the tree view.
+     */
+    public PlaceholderEntry(String folder, String text){
+        this.text = text;
+        setPath(folder);
+        setDirectory(false);
+        setFile(false);
+    }
+
+    @Override
+    public String toString(){
+        return text;
+    }
+}
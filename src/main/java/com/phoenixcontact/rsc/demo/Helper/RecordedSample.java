@@ -0,0 +1,52 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import com.phoenixcontact.ade.commonremoting.utils.AdeObject;
+
+/**
+ * One value of a variable as it was recorded on the controller.
+ * Delivered by a RecordingStream, in the order the values were recorded.
+ */
+public final class RecordedSample {
+
+    private final String uri;
+    private final long timestamp;
+    private final AdeObject value;
+
+    public RecordedSample(String uri, long timestamp, AdeObject value){
+        this.uri = uri;
+        this.timestamp = timestamp;
+        this.value = value;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * @return
+     * The timestamp of the task cycle, in which the value was recorded, as delivered by the controller.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public AdeObject getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString(){
+        var sb = new StringBuilder();
+        sb.append(timestamp);
+        sb.append(", ");
+        sb.append(uri);
+        sb.append(", ");
+        sb.append(value.getValue());
+        return sb.toString();
+    }
+}
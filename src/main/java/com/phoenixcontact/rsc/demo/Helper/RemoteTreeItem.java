@@ -0,0 +1,83 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import com.phoenixcontact.arp.system.commons.services.io.FileSystemEntry;
+import javafx.scene.control.TreeItem;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A node of the remote file tree, which loads its children when it is expanded for the first time.
+ *
+ * Folders are shown as unfoldable without a placeholder child. Every node registers one listener on its own
+ * expanded property, so nodes are garbage collected together with their listener when they leave the tree.
+ * Collapsing and expanding again keeps the children, use reload to show changes.
+ */
+public class RemoteTreeItem extends TreeItem<FileSystemEntry> {
+
+    private final Function<? super RemoteTreeItem, CompletableFuture<Void>> loader;
+    //The last load of the children or null if they must be loaded on the next expansion, only touched on the FX thread
+    private CompletableFuture<Void> children;
+
+    /**
+     * @param entry
+     * The file or folder shown by the node.
+     * @param loader
+     * Sets the children of the node. Is called on the FX thread and completes when the children are set.
+     */
+    public RemoteTreeItem(FileSystemEntry entry, Function<? super RemoteTreeItem, CompletableFuture<Void>> loader){
+        super(entry);
+        this.loader = loader;
+        this.children = null;
+        if(entry.isDirectory())
+            expandedProperty().addListener((observable, wasExpanded, expanded) -> {
+                if(expanded && children == null)
+                    load();
+            });
+    }
+
+    @Override
+    public boolean isLeaf(){
+        return !getValue().isDirectory();
+    }
+
+    /**
+     * Loads the children again if the node is expanded, otherwise when it is expanded the next time.
+     * Must be called on the FX thread.
+     */
+    public void reload(){
+        if(!getValue().isDirectory())
+            return;
+        if(isExpanded())
+            load();
+        else
+            children = null;
+    }
+
+    /**
+     * Loads the children if they were not loaded yet. Must be called on the FX thread.
+     * @return
+     * Completes when the children are set, at once if they are already loaded.
+     */
+    public CompletableFuture<Void> ensureLoaded(){
+        if(!getValue().isDirectory())
+            return CompletableFuture.completedFuture(null);
+        return children != null ? children : load();
+    }
+
+    private CompletableFuture<Void> load(){
+        var result = loader.apply(this);
+        children = result;
+        //Try again on the next expansion
+        result.whenComplete((x, ex) -> {
+            if(ex != null && children == result)
+                children = null;
+        });
+        return result;
+    }
+}
@@ -19,11 +19,17 @@ import java.util.Optional;
  */
 public class SecureConnectionInfo {
 
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_READ_TIMEOUT = 10000;
+
     private ConnectionInfo connectionInfo;
     private SecurityInfo securityInfo;
+    private int connectTimeout;
+    private int readTimeout;
 
     /**
      * Checks if the arguments are valid arguments to establish a connection.
+     * Uses the default timeouts.
      * 
      * @param ip
      * @param port
@@ -33,16 +39,35 @@ public class SecureConnectionInfo {
      * Returns Some of a new SecureConnection Info when the arguments were valid, else none.
      */
     public static Optional<SecureConnectionInfo> tryCreate(String ip, String port, String userName, String password){
+        return tryCreate(ip, port, userName, password, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Checks if the arguments are valid arguments to establish a connection.
+     * 
+     * @param ip
+     * @param port
+     * @param userName
+     * @param password
+     * @param connectTimeout
+     * Milliseconds to wait for the controller to accept the connection.
+     * @param readTimeout
+     * Milliseconds to wait for the answer of a service call.
+     * @return
+     * Returns Some of a new SecureConnection Info when the arguments were valid, else none.
+     */
+    public static Optional<SecureConnectionInfo> tryCreate(String ip, String port, String userName, String password,
+                                                           int connectTimeout, int readTimeout){
         try {
             var portNr = Integer.parseInt(port); //throws if port is not parseable to an int
-            var connectTimeout = 10000;
-            var readTimeout = 10000;
+            if(connectTimeout <= 0 || readTimeout <= 0)
+                return Optional.empty();
 
             //TODO check for valid ip adress etc.
 
             var connectionInfo = new ConnectionInfo(ip, portNr, connectTimeout, readTimeout);
             var securityInfo = new SecurityInfo(userName, password.toCharArray());
-            var sci = new SecureConnectionInfo(connectionInfo, securityInfo);
+            var sci = new SecureConnectionInfo(connectionInfo, securityInfo, connectTimeout, readTimeout);
 
             return Optional.of(sci);
         }
@@ -52,9 +77,11 @@ public class SecureConnectionInfo {
     }
 
 
-    private SecureConnectionInfo(ConnectionInfo connectionInfo, SecurityInfo securityInfo){
+    private SecureConnectionInfo(ConnectionInfo connectionInfo, SecurityInfo securityInfo, int connectTimeout, int readTimeout){
         this.connectionInfo = connectionInfo;
         this.securityInfo = securityInfo;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
     }
 
     public ConnectionInfo getConnectionInfo() {
@@ -65,6 +92,14 @@ public class SecureConnectionInfo {
         return securityInfo;
     }
 
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
     /**
      * Override the password field with zeros to remove the clear text password from memory.
      */
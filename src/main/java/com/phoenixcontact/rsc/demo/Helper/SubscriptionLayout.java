@@ -0,0 +1,80 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable assignment of SubscriptionViews to slots, the positions of the variables
+ * in the results of getVariableInfos and readValues.
+ * A layout belongs to one generation of a SubscriptionRegistry and is outdated when the registry changes.
+ */
+public final class SubscriptionLayout {
+
+    /**
+     * A layout that does not match any generation.
+     */
+    public static final SubscriptionLayout EMPTY = new SubscriptionLayout(-1, new SubscriptionView[0], 0);
+
+    private final long generation;
+    private final SubscriptionView[] slots;
+    private final Map<String, Integer> slotByUri;
+    private final int unknownCount;
+
+    SubscriptionLayout(long generation, SubscriptionView[] slots, int unknownCount){
+        this.generation = generation;
+        this.slots = slots;
+        this.unknownCount = unknownCount;
+        slotByUri = new HashMap<>(slots.length * 2);
+        for(int i = 0; i < slots.length; i++)
+            if(slots[i] != null)
+                slotByUri.put(slots[i].getUri(), i);
+    }
+
+    public long getGeneration(){
+        return generation;
+    }
+
+    public int getSlotCount(){
+        return slots.length;
+    }
+
+    /**
+     * @param slot
+     * @return
+     * The view at that position or null if the slot is empty.
+     */
+    public SubscriptionView getSlot(int slot){
+        return slots[slot];
+    }
+
+    /**
+     * The views in slot order. Shared by all users of the layout, so it must not be modified.
+     * @return
+     */
+    public SubscriptionView[] getSlots(){
+        return slots;
+    }
+
+    /**
+     * @param uri
+     * @return
+     * The slot of the uri or -1 if it is not part of the layout.
+     */
+    public int indexOf(String uri){
+        var slot = slotByUri.get(uri);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @return
+     * The number of variables returned by the subscription service, for which no view was registered.
+     */
+    public int getUnknownCount(){
+        return unknownCount;
+    }
+}
@@ -0,0 +1,196 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import com.phoenixcontact.arp.plc.gds.services.VariableInfo;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps track of all variables of one subscription.
+ *
+ * Every uri is mapped to its SubscriptionView and to a slot. The slot is the position
+ * of the variable in the arrays returned by getVariableInfos and readValues.
+ * The slots are computed once from the VariableInfos and stay valid until the
+ * set of variables changes, so a refresh can update the views by position.
+ *
+ * Changes must be made by one thread at a time, the owner has to synchronize them.
+ * Reading is possible from any thread without locking: the map of views is replaced on every
+ * change and every change increases the generation. The generation is odd while a change
+ * spanning several calls, started by beginChange, is in progress.
+ */
+public class SubscriptionRegistry {
+
+    //copy on write, never modified after publication
+    private volatile Map<String, SubscriptionView> views;
+    private final AtomicLong generation;
+    private final AtomicReference<SubscriptionLayout> layout;
+
+    public SubscriptionRegistry(){
+        views = Collections.emptyMap();
+        generation = new AtomicLong();
+        layout = new AtomicReference<>(SubscriptionLayout.EMPTY);
+    }
+
+    public boolean contains(String uri){
+        return views.containsKey(uri);
+    }
+
+    public SubscriptionView get(String uri){
+        return views.get(uri);
+    }
+
+    public int size(){
+        return views.size();
+    }
+
+    public boolean isEmpty(){
+        return views.isEmpty();
+    }
+
+    /**
+     * All registered views in no particular order.
+     * @return
+     * An unmodifiable collection, that is not affected by later changes of the registry.
+     */
+    public Collection<SubscriptionView> getViews(){
+        return views.values();
+    }
+
+    /**
+     * Registers a new variable. The slots have to be recomputed afterwards.
+     * @param view
+     */
+    public void add(SubscriptionView view){
+        addAll(Collections.singletonList(view));
+    }
+
+    /**
+     * Registers many variables with a single copy of the map.
+     * @param added
+     */
+    public void addAll(Collection<SubscriptionView> added){
+        var copy = new HashMap<>(views);
+        for(var view : added)
+            copy.put(view.getUri(), view);
+        publish(copy);
+    }
+
+    /**
+     * Removes a variable. The slots have to be recomputed afterwards.
+     * @param uri
+     * @return
+     * The removed view or null if the uri was not registered.
+     */
+    public SubscriptionView remove(String uri){
+        var view = views.get(uri);
+        if(view != null)
+            removeAll(Collections.singletonList(uri));
+        return view;
+    }
+
+    /**
+     * Removes many variables with a single copy of the map.
+     * @param uris
+     */
+    public void removeAll(Collection<String> uris){
+        var copy = new HashMap<>(views);
+        for(var uri : uris)
+            copy.remove(uri);
+        publish(copy);
+    }
+
+    public void clear(){
+        publish(new HashMap<>());
+    }
+
+    /**
+     * Marks the slots as outdated, e.g. after the subscription was recreated.
+     */
+    public void invalidate(){
+        generation.addAndGet(2);
+    }
+
+    /**
+     * Starts a change that spans several calls to the subscription service.
+     * Until endChange is called, no layout is valid and readers should discard what they read.
+     */
+    public void beginChange(){
+        generation.incrementAndGet();
+    }
+
+    public void endChange(){
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @return
+     * The current generation. Odd while a change is in progress.
+     */
+    public long getGeneration(){
+        return generation.get();
+    }
+
+    /**
+     * @return
+     * True if the slots match the current set of variables.
+     */
+    public boolean isLayoutValid(){
+        return layout.get().getGeneration() == generation.get();
+    }
+
+    public SubscriptionLayout getLayout(){
+        return layout.get();
+    }
+
+    /**
+     * Assigns the slots according to the order of the VariableInfos returned by the subscription service.
+     * @param infos
+     * The result of getVariableInfos
+     * @param readGeneration
+     * The generation read before getVariableInfos was called.
+     * @return
+     * The new layout or null if the registry changed in the meantime and the infos may be outdated.
+     */
+    public SubscriptionLayout layout(VariableInfo[] infos, long readGeneration){
+        if(readGeneration % 2 != 0)
+            return null;
+
+        var current = views;
+        var slots = new SubscriptionView[infos.length];
+        var unknown = 0;
+        for(int i = 0; i < infos.length; i++){
+            slots[i] = current.get(infos[i].getName());
+            if(slots[i] == null)
+                unknown++;
+        }
+        if(generation.get() != readGeneration)
+            return null;
+
+        var newLayout = new SubscriptionLayout(readGeneration, slots, unknown);
+        layout.set(newLayout);
+        return newLayout;
+    }
+
+    /**
+     * Throws the layout away if it is still the current one, e.g. because the results did not match it.
+     * The next refresh has to compute a new one.
+     * @param outdated
+     */
+    public void discardLayout(SubscriptionLayout outdated){
+        layout.compareAndSet(outdated, SubscriptionLayout.EMPTY);
+    }
+
+    private void publish(Map<String, SubscriptionView> copy){
+        views = Collections.unmodifiableMap(copy);
+        invalidate();
+    }
+}
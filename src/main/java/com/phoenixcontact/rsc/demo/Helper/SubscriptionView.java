@@ -7,8 +7,8 @@ package com.phoenixcontact.rsc.demo.Helper;
 
 import com.phoenixcontact.ade.commonremoting.CoreType;
 import com.phoenixcontact.ade.commonremoting.utils.AdeObject;
-
-import java.math.BigInteger;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 
 /**
  * Holds all relevant Information about a subscription.
@@ -18,29 +18,101 @@ import java.math.BigInteger;
 public class SubscriptionView {
 
     private final String uri;
-    private AdeObject object;
+    //the value of the first read, used until the view is bound to the store of its group
+    private volatile AdeObject object;
+    //the store holding the refreshed values and the slot of this view in it, replaced together in one write
+    private volatile Binding binding;
+    //the value displayed in the table, only touched on the FX thread after construction
+    private final ReadOnlyObjectWrapper<Object> displayedValue;
+    //R4 and R8 values are only updated, when they differ by more than the deadband
+    private volatile double deadband;
+    //shared by all views, refresh only runs on the FX thread
+    private static final StringBuilder FX_BUFFER = new StringBuilder(32);
 
     public SubscriptionView(String uri, AdeObject value){
         this.uri = uri;
         this.object = value;
+        this.binding = null;
+        this.displayedValue = new ReadOnlyObjectWrapper<>(this, "value", value.getValue());
     }
 
     public CoreType getType() {
-        return object.getCoreType();
+        var b = binding;
+        var type = b == null ? null : b.store.getType(b.slot);
+        return type != null ? type : object.getCoreType();
     }
     public String getUri() {
         return  uri;
     }
+    /**
+     * @return
+     * The latest value. Creates a new object if the view is bound to a store.
+     */
     public AdeObject getObject(){
-        return object;
+        var b = binding;
+        var current = b == null ? null : b.store.toAdeObject(b.slot);
+        return current != null ? current : object;
     }
     public Object getValue() {
-        return object.getValue();
+        var b = binding;
+        var current = b == null ? null : b.store.getValue(b.slot);
+        return current != null ? current : object.getValue();
     }
 
 
+    /**
+     * Replaces the value and detaches the view from its store.
+     * @param object
+     */
     public void setObject(AdeObject object){
         this.object = object;
+        this.binding = null;
+    }
+
+    /**
+     * Attaches the view to the slot of the store, which is filled by the update thread.
+     * Called whenever the layout of the subscription changes, with a new store that already holds the values.
+     * @param store
+     * @param slot
+     */
+    public void bind(ValueStore store, int slot){
+        this.binding = new Binding(store, slot);
+    }
+
+    public double getDeadband(){
+        return deadband;
+    }
+
+    /**
+     * @param deadband
+     * Minimal difference for R4 and R8 values to count as a change. 0 disables the deadband.
+     */
+    public void setDeadband(double deadband){
+        this.deadband = Math.max(0, deadband);
+    }
+
+    /**
+     * Found by the PropertyValueFactory of the value column.
+     * The table observes this property, so a row is redrawn without changing the list.
+     * @return
+     */
+    public ReadOnlyObjectProperty<Object> valueProperty(){
+        return displayedValue.getReadOnlyProperty();
+    }
+
+    /**
+     * Publishes the latest object to the table. Must be called on the FX thread.
+     */
+    public void refresh(){
+        //store and slot are read together, so they always belong to the same layout
+        var b = binding;
+        if(b == null || b.slot < 0 || b.store.getType(b.slot) == null){
+            displayedValue.set(getValue());
+            return;
+        }
+        //format the primitive value directly instead of boxing it first
+        FX_BUFFER.setLength(0);
+        displayedValue.set(CoreTypeCodec.append(FX_BUFFER, b.store, b.slot).toString());
     }
 
     @Override
@@ -48,9 +120,9 @@ public class SubscriptionView {
         var sb = new StringBuilder();
         sb.append(uri);
         sb.append(", ");
-        sb.append(object.getCoreType());
+        sb.append(getType());
         sb.append(", ");
-        sb.append(object.getValue());
+        sb.append(getValue());
         return sb.toString();
     }
 
@@ -58,54 +130,25 @@ public class SubscriptionView {
     /**
      * Tries to parse the string provided in valueString to an object matching the CoreType.
      * In case the parsing fails, null will be returned to the caller.
+     * Use CoreTypeCodec directly to get the reason or to avoid boxing.
      * @param type
      * @param valueString
      * @return
      */
 
     public static Object parseToCoreType(CoreType type, String valueString){
-        try{
-            switch(type){
-                case BOOLEAN:
-                    var lowercase = valueString.toLowerCase();
-                    var isTrue = lowercase.equals("true");
-                    var isFalse = lowercase.equals("false");
-                    return isTrue | isFalse ? isTrue : null;
-                case CHAR:
-                    return valueString.length() == 1 ? valueString.charAt(0) : null;
-                case I1:
-                    return Byte.parseByte(valueString);
-                case U1:
-                    var s = Short.parseShort(valueString);
-                    return s < 0 || s >= (1 << 8) ? null : s;
-                case I2:
-                    return Short.parseShort(valueString);
-                case U2:
-                    var i = Integer.parseInt(valueString);
-                    return i < 0 || i >= (1 << 16) ? null : i;
-                case I4:
-                    return Integer.parseInt(valueString);
-                case U4:
-                    var l = Long.parseLong(valueString);
-                    return l < 0 || l >= (1L << 32) ? null : l;
-                case I8:
-                    return Long.parseLong(valueString);
-                case U8:
-                    var b = new BigInteger(valueString);
-                    return b.compareTo(BigInteger.ZERO) == -1 || b.compareTo(BigInteger.ONE.shiftLeft(64)) != -1 ? null : b;
-                case R4:
-                    return Float.parseFloat(valueString);
-                case R8:
-                    return  Double.parseDouble(valueString);
-                case STRING:
-                    return valueString;
-                default:
-                    return null;
-            }
-        } catch (NumberFormatException ex){
-            return null;
-        }
+        var parsed = new CoreTypeCodec.ParsedValue();
+        CoreTypeCodec.parse(type, valueString, parsed);
+        return parsed.toObject();
+    }
 
+    private static final class Binding {
+        private final ValueStore store;
+        private final int slot;
 
+        private Binding(ValueStore store, int slot){
+            this.store = store;
+            this.slot = slot;
+        }
     }
 }
@@ -0,0 +1,18 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+/**
+ * Decides which files a folder transfer copies.
+ */
+public enum SyncMode {
+    //Every file is transferred
+    ALL,
+    //Only files missing at the destination or differing in size or timestamp are transferred
+    CHANGED,
+    //Like CHANGED, files with the same size and timestamp are additionally compared by their CRC32
+    CHANGED_BY_HASH
+}
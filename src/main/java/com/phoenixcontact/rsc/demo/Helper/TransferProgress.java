@@ -0,0 +1,116 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+/**
+ * The state of a file transfer at one point in time.
+ */
+public final class TransferProgress {
+
+    private final int filesDone;
+    private final int filesTotal;
+    private final int filesFailed;
+    private final int filesSkipped;
+    private final long bytesDone;
+    private final long bytesTotal;
+    private final long elapsedMillis;
+    private final boolean finished;
+
+    public TransferProgress(int filesDone, int filesTotal, int filesFailed, int filesSkipped, long bytesDone, long bytesTotal,
+                            long elapsedMillis, boolean finished){
+        this.filesDone = filesDone;
+        this.filesTotal = filesTotal;
+        this.filesFailed = filesFailed;
+        this.filesSkipped = filesSkipped;
+        this.bytesDone = bytesDone;
+        this.bytesTotal = bytesTotal;
+        this.elapsedMillis = elapsedMillis;
+        this.finished = finished;
+    }
+
+    /**
+     * @return
+     * The number of files transferred successfully or skipped because they were unchanged.
+     */
+    public int getFilesDone() {
+        return filesDone;
+    }
+
+    /**
+     * @return
+     * The number of files known so far. Can grow while directories are still enumerated.
+     */
+    public int getFilesTotal() {
+        return filesTotal;
+    }
+
+    public int getFilesFailed() {
+        return filesFailed;
+    }
+
+    /**
+     * @return
+     * The number of unchanged files, which were not transferred in sync mode. Included in getFilesDone.
+     */
+    public int getFilesSkipped() {
+        return filesSkipped;
+    }
+
+    public long getBytesDone() {
+        return bytesDone;
+    }
+
+    /**
+     * @return
+     * The number of bytes known so far. Can grow while directories are still enumerated.
+     */
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return
+     * True for the last progress of a transfer.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public double getBytesPerSecond(){
+        return elapsedMillis > 0 ? bytesDone * 1000.0 / elapsedMillis : 0;
+    }
+
+    public double getFilesPerSecond(){
+        return elapsedMillis > 0 ? filesDone * 1000.0 / elapsedMillis : 0;
+    }
+
+    @Override
+    public String toString(){
+        var sb = new StringBuilder();
+        sb.append(filesDone).append('/').append(filesTotal).append(" files, ");
+        appendBytes(sb, bytesDone).append(" of ");
+        appendBytes(sb, bytesTotal).append(", ");
+        appendBytes(sb, (long) getBytesPerSecond()).append("/s, ");
+        sb.append(String.format("%.1f", getFilesPerSecond())).append(" files/s");
+        if(filesSkipped > 0)
+            sb.append(", ").append(filesSkipped).append(" unchanged");
+        if(filesFailed > 0)
+            sb.append(", ").append(filesFailed).append(" failed");
+        return sb.toString();
+    }
+
+    private static StringBuilder appendBytes(StringBuilder sb, long bytes){
+        if(bytes < 1024)
+            return sb.append(bytes).append(" B");
+        if(bytes < 1024 * 1024)
+            return sb.append(String.format("%.1f", bytes / 1024.0)).append(" KB");
+        return sb.append(String.format("%.1f", bytes / (1024.0 * 1024.0))).append(" MB");
+    }
+}
@@ -0,0 +1,64 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import com.phoenixcontact.ade.commonremoting.utils.AdeObject;
+
+/**
+ * Immutable result of one refresh of a subscription.
+ * Published by the update thread, so readers get a consistent set of values without locking.
+ */
+public final class ValueSnapshot {
+
+    /**
+     * The snapshot before the first refresh.
+     */
+    public static final ValueSnapshot EMPTY = new ValueSnapshot(SubscriptionLayout.EMPTY, new AdeObject[0], 0);
+
+    private final SubscriptionLayout layout;
+    private final AdeObject[] values;
+    private final long timestamp;
+
+    /**
+     * @param layout
+     * The layout the values were read with.
+     * @param values
+     * The values in slot order. The array is taken over and must not be modified afterwards.
+     * @param timestamp
+     * The time of the read in milliseconds since the epoch.
+     */
+    public ValueSnapshot(SubscriptionLayout layout, AdeObject[] values, long timestamp){
+        this.layout = layout;
+        this.values = values;
+        this.timestamp = timestamp;
+    }
+
+    public SubscriptionLayout getLayout(){
+        return layout;
+    }
+
+    public long getTimestamp(){
+        return timestamp;
+    }
+
+    public int size(){
+        return values.length;
+    }
+
+    public AdeObject get(int slot){
+        return values[slot];
+    }
+
+    /**
+     * @param uri
+     * @return
+     * The value of the uri at the time of the snapshot or null if it is not part of it.
+     */
+    public AdeObject get(String uri){
+        var slot = layout.indexOf(uri);
+        return slot < 0 ? null : values[slot];
+    }
+}
@@ -0,0 +1,215 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.Helper;
+
+import com.phoenixcontact.ade.commonremoting.CoreType;
+import com.phoenixcontact.ade.commonremoting.utils.AdeObject;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+/**
+ * Stores the values of a subscription in primitive columns, indexed by slot.
+ *
+ * Integer core types are kept in a long[], R4 and R8 in a double[], BOOLEAN in a BitSet and
+ * everything else, e.g. STRING, in a side table. The store is filled directly from the
+ * results of readValues, so the AdeObjects and their boxed values are garbage right after
+ * the refresh and are not kept alive by the views.
+ *
+ * Written by one update thread. Other threads may read at any time, but might see a value newer
+ * than the one they were notified about. A store has a fixed number of slots. When the layout of the
+ * subscription changes, a new store is filled and the views are bound to it, so a reader never sees
+ * the columns cleared.
+ */
+public class ValueStore {
+
+    private final CoreType[] types;
+    private final long[] integers;
+    private final double[] reals;
+    private final BitSet booleans;
+    private final Object[] objects;
+    private final int size;
+
+    /**
+     * @param size
+     * The number of slots of the layout. All slots are empty at first.
+     */
+    public ValueStore(int size){
+        types = new CoreType[size];
+        integers = new long[size];
+        reals = new double[size];
+        booleans = new BitSet(size);
+        objects = new Object[size];
+        this.size = size;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Copies the value into the columns of the slot.
+     * @param slot
+     * @param value
+     * The value read from the subscription service.
+     * @param deadband
+     * Only used for R4 and R8 values. A value counts as changed, when it differs by more than the deadband.
+     * The stored value is kept in that case, so small changes can not add up unnoticed.
+     * @return
+     * True if the slot was empty or the value changed.
+     */
+    public boolean store(int slot, AdeObject value, double deadband){
+        var type = value.getCoreType();
+        var raw = value.getValue();
+        if(type == null || raw == null){
+            //nothing to store, the slot is shown as empty
+            var wasSet = types[slot] != null;
+            types[slot] = null;
+            return wasSet;
+        }
+        var changed = types[slot] != type;
+        types[slot] = type;
+
+        switch (kindOf(type)){
+            case BOOLEAN:
+                var b = Boolean.TRUE.equals(raw);
+                changed |= booleans.get(slot) != b;
+                booleans.set(slot, b);
+                break;
+            case INTEGER:
+                var l = raw instanceof Character ? (long) (Character) raw : ((Number) raw).longValue();
+                changed |= integers[slot] != l;
+                integers[slot] = l;
+                break;
+            case REAL:
+                var d = ((Number) raw).doubleValue();
+                var last = reals[slot];
+                if(changed || Double.isNaN(d) != Double.isNaN(last) || Math.abs(d - last) > deadband
+                        || (deadband == 0 && Double.compare(d, last) != 0)){
+                    reals[slot] = d;
+                    changed = true;
+                }
+                break;
+            default:
+                changed |= !Objects.deepEquals(objects[slot], raw);
+                objects[slot] = raw;
+        }
+        return changed;
+    }
+
+    /**
+     * @param slot
+     * @return
+     * The core type of the slot or null if it is empty.
+     */
+    public CoreType getType(int slot){
+        return types[slot];
+    }
+
+    public long getLong(int slot){
+        return integers[slot];
+    }
+
+    public double getDouble(int slot){
+        return reals[slot];
+    }
+
+    public boolean getBoolean(int slot){
+        return booleans.get(slot);
+    }
+
+    /**
+     * The value of the slot for display. Boxes primitive values, so it should only be called for changed slots.
+     * U8 values are returned as unsigned decimal string.
+     * @param slot
+     * @return
+     * The value or null if the slot is empty.
+     */
+    public Object getValue(int slot){
+        var type = types[slot];
+        if(type == null)
+            return null;
+        switch (kindOf(type)){
+            case BOOLEAN:
+                return booleans.get(slot);
+            case INTEGER:
+                if(type == CoreType.CHAR)
+                    return (char) integers[slot];
+                if(type == CoreType.U8)
+                    return Long.toUnsignedString(integers[slot]);
+                return integers[slot];
+            case REAL:
+                if(type == CoreType.R4)
+                    return (float) reals[slot];
+                return reals[slot];
+            default:
+                return objects[slot];
+        }
+    }
+
+    /**
+     * Creates an AdeObject with the value of the slot, e.g. to pass it to the data access service.
+     * @param slot
+     * @return
+     * The object or null if the slot is empty.
+     */
+    public AdeObject toAdeObject(int slot){
+        var type = types[slot];
+        if(type == null)
+            return null;
+        var obj = new AdeObject();
+        obj.setCoreType(type);
+        //use the same boxed types as SubscriptionView.parseToCoreType
+        var l = integers[slot];
+        switch (type){
+            case I1:
+                obj.setValue((byte) l);
+                break;
+            case U1:
+            case I2:
+                obj.setValue((short) l);
+                break;
+            case U2:
+            case I4:
+                obj.setValue((int) l);
+                break;
+            case U4:
+            case I8:
+                obj.setValue(l);
+                break;
+            case U8:
+                obj.setValue(SubscriptionView.parseToCoreType(type, Long.toUnsignedString(l)));
+                break;
+            default:
+                obj.setValue(getValue(slot));
+        }
+        return obj;
+    }
+
+    private enum Kind { BOOLEAN, INTEGER, REAL, OTHER }
+
+    private static Kind kindOf(CoreType type){
+        switch (type){
+            case BOOLEAN:
+                return Kind.BOOLEAN;
+            case CHAR:
+            case I1:
+            case U1:
+            case I2:
+            case U2:
+            case I4:
+            case U4:
+            case I8:
+            case U8:
+                return Kind.INTEGER;
+            case R4:
+            case R8:
+                return Kind.REAL;
+            default:
+                return Kind.OTHER;
+        }
+    }
+}
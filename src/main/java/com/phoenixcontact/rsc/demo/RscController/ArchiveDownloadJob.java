@@ -0,0 +1,96 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.ade.commonremoting.utils.OutParam;
+import com.phoenixcontact.arp.system.commons.services.io.*;
+import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import com.phoenixcontact.rsc.demo.Helper.SyncMode;
+import com.phoenixcontact.rsc.demo.Helper.TransferProgress;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Consumer;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Downloads a zip archive from the controller and unpacks it on the host while it is read.
+ * Only the compressed bytes are sent over the connection and the archive is never stored on the host.
+ * This is the reverse of an ArchiveUploadJob, e.g. for archives packed on the controller by an application.
+ */
+public class ArchiveDownloadJob extends TransferJob {
+
+    private final IFileService fileService;
+    private final String source;
+    private final Path target;
+    private final boolean overwrite;
+
+    /**
+     * @param source
+     * The remote path of the archive.
+     * @param target
+     * The local directory the archive is unpacked to. Created if it does not exist.
+     * @param overwrite
+     * If false, existing local files are not replaced and count as failed.
+     */
+    ArchiveDownloadJob(IFileService fileService, CoreCommunication communication, String source, Path target,
+                       boolean overwrite, Consumer<TransferProgress> progressListener){
+        super(communication, 1, progressListener);
+        this.fileService = fileService;
+        this.source = source;
+        this.target = target;
+        this.overwrite = overwrite;
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        var outData = new OutParam<InputStream>();
+        var outTraits = new OutParam<TraitItem[]>();
+        var result = fileService.read(FileAttributes.traitsFor(SyncMode.CHANGED), source, outData, outTraits);
+        if(result.getValue() != FileSystemError.NONE.getValue()){
+            failed(source, result);
+            return;
+        }
+        //The progress shows the compressed bytes, the number of files is only known at the end
+        addTotal(0, Math.max(0, FileAttributes.of(outTraits.getValue()).getSize()));
+
+        var root = target.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        var data = counting(outData.getValue());
+        try(var zip = new ZipInputStream(data)){
+            for(var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()){
+                checkCancelled();
+                var local = root.resolve(entry.getName()).normalize();
+                //Entries must not escape the target, e.g. with ../
+                if(!local.startsWith(root)){
+                    addTotal(1, 0);
+                    failed(entry.getName(), "The entry is outside of the target folder");
+                    continue;
+                }
+                if(entry.isDirectory()){
+                    Files.createDirectories(local);
+                    continue;
+                }
+
+                addTotal(1, 0);
+                if(!overwrite && Files.exists(local)){
+                    failed(local.toString(), "The file already exists");
+                    continue;
+                }
+                Files.createDirectories(local.getParent());
+                Files.copy(zip, local, StandardCopyOption.REPLACE_EXISTING);
+                if(entry.getLastModifiedTime() != null)
+                    Files.setLastModifiedTime(local, entry.getLastModifiedTime());
+                done();
+            }
+            //Read the central directory as well, so the progress ends at the archive size
+            data.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
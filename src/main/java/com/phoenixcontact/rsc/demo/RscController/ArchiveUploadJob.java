@@ -0,0 +1,177 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.arp.system.commons.services.io.FileSystemError;
+import com.phoenixcontact.arp.system.commons.services.io.IFileService;
+import com.phoenixcontact.arp.system.commons.services.io.TraitItem;
+import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import com.phoenixcontact.rsc.demo.Helper.TransferProgress;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Uploads a local directory tree as one zip archive.
+ *
+ * The archive is packed on a worker while the calling thread writes it, connected by a pipe,
+ * so no temporary file is needed and only the compressed bytes are sent over the connection.
+ * The file service can not run programs on the controller, so the archive is stored as it is
+ * and has to be unpacked there by an application of the controller. Use an ArchiveDownloadJob
+ * to unpack such an archive on the host.
+ */
+public class ArchiveUploadJob extends TransferJob {
+
+    private final IFileService fileService;
+    private final Path source;
+    private final String target;
+    private final boolean overwrite;
+    private final int bufferSize;
+
+    //set by the packer if it fails, so the upload does not end with a truncated archive
+    private volatile Exception packerError;
+    private final AtomicLong compressedBytes;
+
+    /**
+     * @param source
+     * The local directory to pack.
+     * @param target
+     * The remote path of the archive.
+     * @param overwrite
+     * @param bufferSize
+     * The size of the pipe between packer and upload.
+     */
+    ArchiveUploadJob(IFileService fileService, CoreCommunication communication, Path source, String target,
+                     boolean overwrite, int bufferSize, Consumer<TransferProgress> progressListener){
+        super(communication, 1, progressListener);
+        this.fileService = fileService;
+        this.source = source;
+        this.target = target;
+        this.overwrite = overwrite;
+        this.bufferSize = bufferSize;
+        compressedBytes = new AtomicLong();
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        var entries = new ArrayList<Path>();
+        try(var walk = Files.walk(source)){
+            walk.filter(path -> !path.equals(source)).forEach(entries::add);
+        }
+        for(var entry : entries)
+            if(Files.isRegularFile(entry))
+                addTotal(1, Files.size(entry));
+
+        var pipe = new PipedInputStream(bufferSize);
+        var packerOut = new PipedOutputStream(pipe);
+        submit(source.toString(), () -> pack(entries, packerOut));
+
+        try(var data = new PackedInputStream(pipe)){
+            var result = new AtomicTransfer(fileService, bufferSize).upload(target, overwrite, new TraitItem[0], data);
+            if(result.getValue() != FileSystemError.NONE.getValue())
+                failed(target, result);
+            else
+                communication.log("Uploaded " + compressedBytes.get() + " compressed bytes of " + getProgress().getBytesTotal()
+                        + " bytes to " + target);
+        }
+    }
+
+    //Runs on the worker. The uncompressed bytes are reported as progress.
+    private void pack(List<Path> entries, PipedOutputStream out){
+        var zip = new ZipOutputStream(out);
+        try{
+            for(var entry : entries){
+                checkCancelled();
+                var attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                var name = toEntryName(entry) + (attributes.isDirectory() ? "/" : "");
+                var zipEntry = new ZipEntry(name);
+                zipEntry.setLastModifiedTime(attributes.lastModifiedTime());
+                zip.putNextEntry(zipEntry);
+                if(attributes.isRegularFile()){
+                    try(var in = LocalFiles.openForUpload(entry, bufferSize)){
+                        var buffer = new byte[8192];
+                        int count;
+                        while((count = in.read(buffer)) >= 0){
+                            checkCancelled();
+                            zip.write(buffer, 0, count);
+                            addBytes(count);
+                        }
+                    }
+                    done();
+                }
+                zip.closeEntry();
+            }
+            //writes the central directory, only a complete archive may be finished
+            zip.close();
+        }
+        catch(Exception ex){
+            //The error has to be set before the pipe is closed, the reader checks it at the end of the data
+            packerError = ex;
+            try{
+                out.close();
+            }
+            catch(IOException closeEx){
+                //already closed by the reader
+            }
+        }
+    }
+
+    //The archive always uses / as separator
+    private String toEntryName(Path path){
+        var sb = new StringBuilder();
+        for(var name : source.relativize(path)){
+            if(sb.length() > 0)
+                sb.append('/');
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+
+    //Counts the compressed bytes and turns a failure of the packer into a failure of the upload
+    private final class PackedInputStream extends FilterInputStream {
+
+        private PackedInputStream(InputStream in){
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = super.read();
+            check(b < 0);
+            if(b >= 0)
+                compressedBytes.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            var count = super.read(buffer, offset, length);
+            check(count < 0);
+            if(count > 0)
+                compressedBytes.addAndGet(count);
+            return count;
+        }
+
+        private void check(boolean end) throws IOException {
+            if(isCancelled())
+                throw new IOException("Transfer cancelled");
+            if(end && packerError != null)
+                throw new IOException("Packing failed", packerError);
+        }
+    }
+}
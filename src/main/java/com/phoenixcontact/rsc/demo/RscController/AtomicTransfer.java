@@ -0,0 +1,137 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.ade.commonremoting.utils.OutParam;
+import com.phoenixcontact.arp.system.commons.services.io.*;
+import com.phoenixcontact.rsc.demo.Helper.Action;
+import com.phoenixcontact.rsc.demo.Helper.SyncMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+/**
+ * Transfers single files so an interruption never leaves a half written file at the destination.
+ *
+ * Downloads are written to "name.part" next to the target and renamed to the target when they are complete.
+ * Uploads are written to "name.part" on the controller and moved to the target afterwards.
+ *
+ * An interrupted transfer is not resumed. The file service can neither read from an offset nor append
+ * to a remote file, so the file is transferred again from the start and the old part is replaced.
+ */
+final class AtomicTransfer {
+
+    private static final String PART_SUFFIX = ".part";
+
+    private final IFileService fileService;
+    //One pair of buffers per thread, reused for all files it downloads
+    private final ThreadLocal<byte[]> heapBuffers;
+    private final ThreadLocal<ByteBuffer> directBuffers;
+
+    /**
+     * @param fileService
+     * @param bufferSize
+     * The size of the buffers used to copy downloads to disk.
+     */
+    AtomicTransfer(IFileService fileService, int bufferSize){
+        this.fileService = fileService;
+        heapBuffers = ThreadLocal.withInitial(() -> new byte[bufferSize]);
+        directBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    /**
+     * Uploads data to a temporary file and moves it to remote. The temporary file is deleted if the upload failed.
+     * @param remote
+     * @param overwrite
+     * Passed to the move, so an existing file is only replaced if set.
+     * @param traitItems
+     * Passed to write.
+     * @param data
+     * @return
+     * The first error or NONE.
+     */
+    FileSystemError upload(String remote, boolean overwrite, TraitItem[] traitItems, InputStream data) throws Exception {
+        var part = remote + PART_SUFFIX;
+        FileSystemError result;
+        try{
+            result = fileService.write(part, true, traitItems, data);
+        }
+        catch(Exception ex){
+            //e.g. the data failed, as a packer does, or the transfer was cancelled
+            ((Action) () -> fileService.delete(part)).silence().run();
+            throw ex;
+        }
+        if(result.getValue() != FileSystemError.NONE.getValue()){
+            ((Action) () -> fileService.delete(part)).silence().run();
+            return result;
+        }
+
+        result = fileService.move(overwrite, part, remote);
+        if(result.getValue() != FileSystemError.NONE.getValue())
+            fileService.delete(part);
+        return result;
+    }
+
+    /**
+     * Downloads remote to a temporary file and renames it to local.
+     * The local file gets the timestamp of the remote one.
+     * @param remote
+     * @param local
+     * Replaced when the download is complete.
+     * @param progress
+     * Receives the number of bytes written. May throw to stop the download, the temporary file is deleted.
+     * @return
+     * The error of the read or NONE.
+     */
+    FileSystemError download(String remote, Path local, LongConsumer progress) throws Exception {
+        var outData = new OutParam<InputStream>();
+        var outTraits = new OutParam<TraitItem[]>();
+        var result = fileService.read(FileAttributes.traitsFor(SyncMode.CHANGED), remote, outData, outTraits);
+        if(result.getValue() != FileSystemError.NONE.getValue())
+            return result;
+        var attributes = FileAttributes.of(outTraits.getValue());
+
+        var part = local.resolveSibling(local.getFileName() + PART_SUFFIX);
+        try(var data = outData.getValue();
+            var channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)){
+            LocalFiles.copy(data, channel, heapBuffers.get(), directBuffers.get(), progress::accept);
+        }
+        catch(Exception ex){
+            Files.deleteIfExists(part);
+            throw ex;
+        }
+
+        moveAtomically(part, local);
+        attributes.applyTo(local);
+        return FileSystemError.NONE;
+    }
+
+    /**
+     * @return
+     * True for the temporary files of running transfers, which must not be deleted or uploaded as extras.
+     */
+    static boolean isTemporary(String name){
+        return name.endsWith(PART_SUFFIX);
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try{
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException ex){
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
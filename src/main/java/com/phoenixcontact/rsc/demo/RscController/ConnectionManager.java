@@ -0,0 +1,400 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.ade.commonremoting.CommonRemotingException;
+import com.phoenixcontact.rsc.demo.Helper.CommandReport;
+import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import com.phoenixcontact.rsc.demo.Helper.ConnectionState;
+import com.phoenixcontact.rsc.demo.Helper.SecureConnectionInfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Holds the connections to many controllers, keyed by host.
+ *
+ * Connecting, health checks and operations on several controllers run in parallel on a pool of concurrency threads,
+ * so a station supervising dozens of controllers does not open all connections at once
+ * and a controller that does not answer only blocks one thread until its timeout.
+ *
+ * With auto reconnect enabled, a connection that failed is established again in the background.
+ * The delay between the attempts doubles up to a maximum, so controllers which are down for a longer time
+ * are not flooded with connection requests.
+ */
+public class ConnectionManager {
+
+    public static final int DEFAULT_CONCURRENCY = 8;
+    public static final long DEFAULT_MIN_BACKOFF = 500;
+    public static final long DEFAULT_MAX_BACKOFF = 30_000;
+
+    /**
+     * An operation on one controller.
+     * @param <R>
+     * The result of the operation.
+     */
+    public interface Operation<R> {
+        R apply(ControllerConnection connection) throws Exception;
+    }
+
+    private final CoreCommunication communication;
+    private final ConcurrentHashMap<String, ControllerConnection> connections = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService scheduler;
+    //The next health check, guarded by this. A check schedules the next one when it completed.
+    private ScheduledFuture<?> healthChecks;
+    private long healthCheckPeriod;
+    //Increased by start and stop, so the checks of a stopped run do not schedule further ones
+    private long healthCheckRun;
+    private final ControllerConnection.StateListener stateListener = this::stateChanged;
+    //The delay before the next reconnect attempt and the scheduled attempts, keyed by host
+    private final ConcurrentHashMap<String, Long> backoffs = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ScheduledFuture<?>> pendingReconnects = new ConcurrentHashMap<>();
+    private volatile boolean autoReconnect;
+    private volatile long minBackoff = DEFAULT_MIN_BACKOFF;
+    private volatile long maxBackoff = DEFAULT_MAX_BACKOFF;
+
+    /**
+     * @param concurrency
+     * The maximum number of controllers contacted at the same time.
+     */
+    public ConnectionManager(CoreCommunication communication, int concurrency){
+        this.communication = communication;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            var thread = new Thread(r, "connection-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "connection-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a controller without connecting to it.
+     * @param sci
+     * Owned by the manager afterwards.
+     * @return
+     * The connection of the host. If the host was already added, the existing connection is returned and sci is cleared.
+     */
+    public ControllerConnection add(SecureConnectionInfo sci){
+        var added = new ControllerConnection(sci);
+        var existing = connections.putIfAbsent(added.getHost(), added);
+        if(existing != null){
+            sci.clean();
+            return existing;
+        }
+        added.addStateListener(stateListener);
+        return added;
+    }
+
+    /**
+     * @param host
+     * @return
+     * The connection or null if the host was not added.
+     */
+    public ControllerConnection get(String host){
+        return connections.get(host);
+    }
+
+    public Collection<ControllerConnection> getConnections(){
+        return Collections.unmodifiableCollection(connections.values());
+    }
+
+    /**
+     * Closes the connection to the host and forgets it.
+     * @param host
+     */
+    public void remove(String host){
+        var connection = connections.remove(host);
+        if(connection == null)
+            return;
+        connection.removeStateListener(stateListener);
+        cancelReconnect(host);
+        backoffs.remove(host);
+        connection.close();
+    }
+
+    /**
+     * Returns the cached service proxy of a controller.
+     * @param host
+     * @param type
+     * @return
+     * @throws CommonRemotingException
+     * @throws IllegalStateException
+     * If the host was not added or is not connected.
+     */
+    public <T> T getService(String host, Class<T> type) throws CommonRemotingException {
+        var connection = connections.get(host);
+        if(connection == null)
+            throw new IllegalStateException(host + " was not added");
+        return connection.getService(type);
+    }
+
+    /**
+     * Connects to the host in the background.
+     * @param host
+     * @return
+     * Completes with the connection or exceptionally if it could not be established.
+     */
+    public CompletableFuture<ControllerConnection> connect(String host){
+        var connection = connections.get(host);
+        if(connection == null)
+            return CompletableFuture.failedFuture(new IllegalStateException(host + " was not added"));
+        return CompletableFuture.supplyAsync(() -> {
+            try{
+                connection.connect();
+                return connection;
+            }
+            catch (Exception ex){
+                communication.log("Connecting to " + host + " failed: " + connection.getLastError());
+                throw new CompletionException(ex);
+            }
+        }, workers);
+    }
+
+    /**
+     * Connects to all controllers, which are not connected yet.
+     * @return
+     * Whether each controller is connected afterwards, keyed by host. Completes when every attempt finished.
+     */
+    public CompletableFuture<Map<String, Boolean>> connectAll(){
+        return runOnAll(connection -> {
+            try{
+                connection.connect();
+            }
+            catch (Exception ex){
+                communication.log("Connecting to " + connection.getHost() + " failed: " + connection.getLastError());
+            }
+            return connection.getState() == ConnectionState.CONNECTED;
+        }, false);
+    }
+
+    public boolean isAutoReconnect(){
+        return autoReconnect;
+    }
+
+    /**
+     * Enables or disables reconnecting failed connections in the background.
+     * @param enabled
+     * @param minBackoffMillis
+     * The delay before the first attempt after the connection was lost.
+     * @param maxBackoffMillis
+     * The delay is doubled after each failed attempt up to this value.
+     */
+    public void setAutoReconnect(boolean enabled, long minBackoffMillis, long maxBackoffMillis){
+        minBackoff = Math.max(1, minBackoffMillis);
+        maxBackoff = Math.max(minBackoff, maxBackoffMillis);
+        autoReconnect = enabled;
+        if(!enabled){
+            for(var host : new ArrayList<>(pendingReconnects.keySet()))
+                cancelReconnect(host);
+            return;
+        }
+        for(var connection : connections.values())
+            if(connection.getState() == ConnectionState.FAILED)
+                scheduleReconnect(connection);
+    }
+
+    /**
+     * Checks all connections in parallel. Failed connections and connections, which do not answer, are established again.
+     * With auto reconnect enabled, failed connections are left to their scheduled attempt.
+     * @return
+     * Whether each controller is connected afterwards, keyed by host.
+     */
+    public CompletableFuture<Map<String, Boolean>> checkHealth(){
+        return runOnAll(connection -> {
+            if(connection.getState() == ConnectionState.CONNECTED && connection.checkHealth())
+                return true;
+            if(autoReconnect)
+                return false;
+            communication.log("Reconnecting to " + connection.getHost() + ": " + connection.getLastError());
+            try{
+                connection.reconnect();
+            }
+            catch (Exception ex){
+                communication.log("Reconnecting to " + connection.getHost() + " failed: " + connection.getLastError());
+            }
+            return connection.getState() == ConnectionState.CONNECTED;
+        }, false);
+    }
+
+    /**
+     * Runs checkHealth periodically until stopHealthChecks or close is called.
+     * @param periodMillis
+     */
+    public synchronized void startHealthChecks(long periodMillis){
+        stopHealthChecks();
+        healthCheckPeriod = periodMillis;
+        scheduleHealthCheck(healthCheckRun);
+    }
+
+    public synchronized void stopHealthChecks(){
+        healthCheckRun++;
+        if(healthChecks != null)
+            healthChecks.cancel(false);
+        healthChecks = null;
+    }
+
+    /*
+     * The scheduler only starts the check, it runs on the workers. The scheduler does not wait for it,
+     * because it also fires the reconnect attempts. The next check is scheduled when this one completed,
+     * so the checks never overlap.
+     */
+    private synchronized void scheduleHealthCheck(long run){
+        if(run != healthCheckRun)
+            return;
+        try{
+            healthChecks = scheduler.schedule(() -> checkHealth().whenComplete((x, ex) -> scheduleHealthCheck(run)),
+                    healthCheckPeriod, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException ex){
+            //closed
+        }
+    }
+
+    /**
+     * Runs the operation on all connected controllers in parallel.
+     * Failures are logged and mark the connection as failed, so the next health check reconnects it.
+     * @param operation
+     * @return
+     * The results of the controllers on which the operation succeeded, keyed by host.
+     */
+    public <R> CompletableFuture<Map<String, R>> runOnAll(Operation<R> operation){
+        return runOnAll(operation, true);
+    }
+
+    /**
+     * Runs a plc command on all connected controllers in parallel, e.g. commands -> commands.start(PlcStartKind.WARM).
+     * The service calls run on the workers, waiting for the target state does not block a thread.
+     * @param command
+     * @return
+     * The reports of all controllers, keyed by host. Completes when every command completed.
+     */
+    public CompletableFuture<Map<String, CommandReport>> runCommandOnAll(Function<PlcCommands, CompletableFuture<CommandReport>> command){
+        var results = Collections.synchronizedMap(new HashMap<String, CommandReport>());
+        var tasks = new ArrayList<CompletableFuture<Void>>();
+        for(var connection : connections.values()){
+            if(connection.getState() != ConnectionState.CONNECTED)
+                continue;
+            CompletableFuture<CommandReport> report;
+            try{
+                report = command.apply(new PlcCommands(connection, workers));
+            }
+            catch (Exception ex){
+                report = CompletableFuture.completedFuture(
+                        new CommandReport(connection.getHost(), "Command", List.of(), null, ex.getMessage(), 0));
+            }
+            tasks.add(report.thenAccept(r -> {
+                if(!r.isSuccessful())
+                    communication.log(r.toString());
+                results.put(connection.getHost(), r);
+            }));
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).thenApply(x -> results);
+    }
+
+    private <R> CompletableFuture<Map<String, R>> runOnAll(Operation<R> operation, boolean connectedOnly){
+        var results = Collections.synchronizedMap(new HashMap<String, R>());
+        var tasks = new ArrayList<CompletableFuture<Void>>();
+        for(var connection : connections.values()){
+            if(connectedOnly && connection.getState() != ConnectionState.CONNECTED)
+                continue;
+            tasks.add(CompletableFuture.runAsync(() -> {
+                try{
+                    results.put(connection.getHost(), operation.apply(connection));
+                }
+                catch (Exception ex){
+                    if(ControllerConnection.isConnectionError(ex))
+                        connection.fail(ex);
+                    communication.log(connection.getHost() + " failed: " + (ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName()));
+                }
+            }, workers));
+        }
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).thenApply(x -> results);
+    }
+
+    /**
+     * Stops the health checks and closes all connections.
+     */
+    public void close(){
+        autoReconnect = false;
+        stopHealthChecks();
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+        for(var host : new ArrayList<>(connections.keySet()))
+            remove(host);
+    }
+
+    //Called on the thread which changed the state of the connection
+    private void stateChanged(ControllerConnection connection, ConnectionState previous, ConnectionState current){
+        if(current == ConnectionState.FAILED){
+            if(autoReconnect)
+                scheduleReconnect(connection);
+        }
+        else if(current == ConnectionState.CONNECTED){
+            backoffs.remove(connection.getHost());
+            if(previous != ConnectionState.DISCONNECTED && previous != ConnectionState.CONNECTED){
+                communication.log("Connection to " + connection.getHost() + " restored after " + connection.getReconnectCount()
+                        + " reconnects, down for " + connection.getDowntimeMillis() + " ms in total");
+            }
+        }
+    }
+
+    private void scheduleReconnect(ControllerConnection connection){
+        var host = connection.getHost();
+        pendingReconnects.computeIfAbsent(host, h -> {
+            var delay = backoffs.getOrDefault(h, minBackoff);
+            backoffs.put(h, Math.min(maxBackoff, delay * 2));
+            //spread the attempts, so controllers which failed together are not contacted at the same time
+            var jittered = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+            try{
+                //the scheduler only starts the attempt, it runs on the workers
+                return scheduler.schedule(() -> workers.execute(() -> reconnect(connection)), jittered, TimeUnit.MILLISECONDS);
+            }
+            catch (RejectedExecutionException ex){
+                //closed
+                return null;
+            }
+        });
+    }
+
+    private void reconnect(ControllerConnection connection){
+        pendingReconnects.remove(connection.getHost());
+        if(!autoReconnect || connection.getState() != ConnectionState.FAILED)
+            return;
+        try{
+            connection.reconnect();
+        }
+        catch (Exception ex){
+            //the connection failed again and scheduled the next attempt
+            communication.log("Reconnecting to " + connection.getHost() + " failed: " + connection.getLastError());
+        }
+    }
+
+    private void cancelReconnect(String host){
+        var pending = pendingReconnects.remove(host);
+        if(pending != null)
+            pending.cancel(false);
+    }
+}
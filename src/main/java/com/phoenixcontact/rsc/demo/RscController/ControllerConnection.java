@@ -0,0 +1,387 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.ade.commonremoting.CommonRemotingException;
+import com.phoenixcontact.arp.plc.domain.services.IPlcManagerService2;
+import com.phoenixcontact.arp.system.rsc.ServiceManager;
+import com.phoenixcontact.rsc.demo.Helper.Action;
+import com.phoenixcontact.rsc.demo.Helper.ConnectionState;
+import com.phoenixcontact.rsc.demo.Helper.SecureConnectionInfo;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The connection to one controller.
+ *
+ * getService returns one proxy per service interface, which stays valid for the lifetime of the connection.
+ * It forwards every call to the service of the current ServiceManager, which is requested once per connect.
+ * So the services built on top of a connection keep working after it was established again.
+ * A call that fails in the remoting layer marks the connection as failed. While it is not connected, calls fail at once
+ * with an IllegalStateException instead of waiting for the timeout.
+ */
+public class ControllerConnection {
+
+    /**
+     * Is notified after the state of a connection changed, on the thread which changed it.
+     * A reconnect is reported as change from the state before to CONNECTED, which might be CONNECTED as well.
+     */
+    public interface StateListener {
+        void stateChanged(ControllerConnection connection, ConnectionState previous, ConnectionState current);
+    }
+
+    private final SecureConnectionInfo sci;
+    private final String host;
+    //The proxies handed out by getService
+    private final ConcurrentHashMap<Class<?>, Object> proxies = new ConcurrentHashMap<>();
+    //The services of the current ServiceManager, cleared on every connect
+    private final ConcurrentHashMap<Class<?>, Object> services = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<StateListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger reconnects = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final Object connectLock = new Object();
+    //guarded by this
+    private ServiceManager serviceManager;
+    //The ServiceManager of a connect in progress, closed by close to abort it
+    private volatile ServiceManager connecting;
+    //Created by the first call of getPlcStateMonitor, guarded by this
+    private PlcStateMonitor stateMonitor;
+    private volatile ConnectionState state = ConnectionState.DISCONNECTED;
+    private volatile String lastError;
+    private volatile long lastCheck;
+    //The start of the current outage or 0, and the sum of all outages before, guarded by this
+    private long downSince;
+    private long downtime;
+
+    /**
+     * @param sci
+     * Used to connect and to reconnect. Owned by the connection, its password is cleared by close.
+     */
+    public ControllerConnection(SecureConnectionInfo sci){
+        this.sci = sci;
+        this.host = sci.getConnectionInfo().getHost();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public ConnectionState getState() {
+        return state;
+    }
+
+    public boolean isConnected() {
+        return state == ConnectionState.CONNECTED;
+    }
+
+    /**
+     * @return
+     * The message of the last failure or null.
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return
+     * The time of the last successful health check or connect in milliseconds since 1970.
+     */
+    public long getLastCheck() {
+        return lastCheck;
+    }
+
+    /**
+     * @return
+     * How often the connection was established again.
+     */
+    public int getReconnectCount() {
+        return reconnects.get();
+    }
+
+    /**
+     * @return
+     * How often the connection was lost or could not be established.
+     */
+    public int getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * @return
+     * The time the connection was lost in total, including the current outage, in milliseconds.
+     */
+    public synchronized long getDowntimeMillis() {
+        return downSince == 0 ? downtime : downtime + System.currentTimeMillis() - downSince;
+    }
+
+    /**
+     * @return
+     * The time since the connection was lost or 0 while it is connected.
+     */
+    public synchronized long getCurrentDowntimeMillis() {
+        return downSince == 0 ? 0 : System.currentTimeMillis() - downSince;
+    }
+
+    public void addStateListener(StateListener listener){
+        listeners.add(listener);
+    }
+
+    public void removeStateListener(StateListener listener){
+        listeners.remove(listener);
+    }
+
+    /**
+     * Connects to the controller if not already connected.
+     * @throws CommonRemotingException
+     * When the connection could not be established. The state is FAILED afterwards.
+     */
+    public void connect() throws CommonRemotingException {
+        connect(false);
+    }
+
+    /**
+     * Closes the current ServiceManager and connects with a new one.
+     * @throws CommonRemotingException
+     */
+    public void reconnect() throws CommonRemotingException {
+        connect(true);
+    }
+
+    private void connect(boolean force) throws CommonRemotingException {
+        ConnectionState previous;
+        //Serializes the connects, the monitor is only held to publish the state
+        synchronized (connectLock){
+            ServiceManager sm;
+            synchronized (this){
+                if(state == ConnectionState.CONNECTED && !force)
+                    return;
+                if(state == ConnectionState.CLOSED)
+                    throw new IllegalStateException("The connection to " + host + " is closed");
+                closeServiceManager();
+                previous = state;
+                state = ConnectionState.CONNECTING;
+                sm = new ServiceManager();
+                connecting = sm;
+            }
+            try{
+                sm.connect(sci.getConnectionInfo(), sci.getSecurityInfo());
+            }
+            catch (Exception ex){
+                connecting = null;
+                ((Action) sm::close).silence().run();
+                fail(ex);
+                throw ex;
+            }
+            synchronized (this){
+                connecting = null;
+                //closed while connecting
+                if(state == ConnectionState.CLOSED){
+                    ((Action) sm::close).silence().run();
+                    throw new IllegalStateException("The connection to " + host + " is closed");
+                }
+                serviceManager = sm;
+                lastError = null;
+                lastCheck = System.currentTimeMillis();
+                if(downSince != 0){
+                    downtime += lastCheck - downSince;
+                    downSince = 0;
+                }
+                state = ConnectionState.CONNECTED;
+                if(previous != ConnectionState.DISCONNECTED)
+                    reconnects.incrementAndGet();
+            }
+        }
+        notifyListeners(previous, ConnectionState.CONNECTED);
+    }
+
+    /**
+     * Reads the state of the plc, the cheapest call every controller answers.
+     * @return
+     * True if the controller answered. Otherwise the state is FAILED afterwards.
+     */
+    public boolean checkHealth(){
+        try{
+            getService(IPlcManagerService2.class).getPlcState();
+            lastCheck = System.currentTimeMillis();
+            return true;
+        }
+        catch (Exception ex){
+            fail(ex);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the proxy of the service interface. It is created once and stays valid across reconnects.
+     * @param type
+     * The service interface, e.g. IDataAccessService.class
+     * @return
+     * @throws CommonRemotingException
+     */
+    public <T> T getService(Class<T> type) throws CommonRemotingException {
+        return type.cast(proxies.computeIfAbsent(type, this::createProxy));
+    }
+
+    /**
+     * Returns the monitor of the plc state shared by all consumers of this connection.
+     * @return
+     * @throws CommonRemotingException
+     */
+    public synchronized PlcStateMonitor getPlcStateMonitor() throws CommonRemotingException {
+        if(state == ConnectionState.CLOSED)
+            throw new IllegalStateException("The connection to " + host + " is closed");
+        if(stateMonitor == null)
+            stateMonitor = new PlcStateMonitor(this);
+        return stateMonitor;
+    }
+
+    /**
+     * @return
+     * The ServiceManager of the current connection or null if not connected.
+     * Services requested from it directly do not survive a reconnect, prefer getService.
+     */
+    public synchronized ServiceManager getServiceManager() {
+        return serviceManager;
+    }
+
+    /**
+     * Disconnects and clears the password. The connection can not be used afterwards.
+     * A connect in progress is aborted.
+     */
+    public void close(){
+        //Aborts the connect in progress, it fails and leaves the state CLOSED
+        var pending = connecting;
+        if(pending != null)
+            ((Action) pending::close).silence().run();
+        ConnectionState previous;
+        synchronized (this){
+            if(state == ConnectionState.CLOSED)
+                return;
+            if(stateMonitor != null)
+                stateMonitor.close();
+            closeServiceManager();
+            previous = state;
+            state = ConnectionState.CLOSED;
+            sci.clean();
+        }
+        notifyListeners(previous, ConnectionState.CLOSED);
+    }
+
+    /**
+     * Marks the connection as failed, e.g. when a call on one of its services failed.
+     * @param ex
+     */
+    public void fail(Exception ex){
+        ConnectionState previous;
+        synchronized (this){
+            lastError = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName();
+            if(state == ConnectionState.CLOSED || state == ConnectionState.FAILED)
+                return;
+            failures.incrementAndGet();
+            if(downSince == 0)
+                downSince = System.currentTimeMillis();
+            previous = state;
+            state = ConnectionState.FAILED;
+        }
+        notifyListeners(previous, ConnectionState.FAILED);
+    }
+
+    @Override
+    public String toString(){
+        var sb = new StringBuilder();
+        sb.append(host);
+        sb.append(", ");
+        sb.append(state);
+        if(lastError != null && state == ConnectionState.FAILED){
+            sb.append(", ");
+            sb.append(lastError);
+        }
+        return sb.toString();
+    }
+
+    //Forwards the calls to the service of the current ServiceManager
+    private Object createProxy(Class<?> type){
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if(method.getDeclaringClass() == Object.class)
+                return invokeObjectMethod(proxy, method, args);
+            var target = currentService(type);
+            try{
+                return method.invoke(target, args);
+            }
+            catch (InvocationTargetException ex){
+                var cause = ex.getCause();
+                //The services report errors of the call in their result, only the remoting layer fails the connection
+                if(isConnectionError(cause))
+                    fail((Exception) cause);
+                throw cause;
+            }
+        });
+    }
+
+    /**
+     * Checks if the exception was raised by the remoting layer, i.e. the connection is broken.
+     * Errors of the call itself, e.g. an IllegalArgumentException, leave the connection as it is.
+     * @param ex
+     * @return
+     */
+    static boolean isConnectionError(Throwable ex){
+        for(var cause = ex; cause != null; cause = cause.getCause()){
+            if(cause instanceof CommonRemotingException || cause instanceof IOException)
+                return true;
+        }
+        return false;
+    }
+
+    private Object currentService(Class<?> type) throws CommonRemotingException {
+        //Do not wait for a connect in progress
+        if(state != ConnectionState.CONNECTED)
+            throw new IllegalStateException("Not connected to " + host);
+        var service = services.get(type);
+        if(service != null)
+            return service;
+        synchronized (this){
+            if(state != ConnectionState.CONNECTED || serviceManager == null)
+                throw new IllegalStateException("Not connected to " + host);
+            service = services.get(type);
+            if(service == null){
+                service = serviceManager.getService(type);
+                services.put(type, service);
+            }
+            return service;
+        }
+    }
+
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args){
+        switch (method.getName()){
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "Proxy of " + proxy.getClass().getInterfaces()[0].getSimpleName() + " for " + host;
+        }
+    }
+
+    //previous is CONNECTED as well, when a connection was established again by reconnect
+    private void notifyListeners(ConnectionState previous, ConnectionState current){
+        for(var listener : listeners)
+            ((Action) () -> listener.stateChanged(this, previous, current)).silence().run();
+    }
+
+    private void closeServiceManager(){
+        services.clear();
+        var sm = serviceManager;
+        serviceManager = null;
+        if(sm != null)
+            ((Action) sm::close).silence().run();
+    }
+}
@@ -0,0 +1,143 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.arp.system.commons.services.io.FileSystemEntry;
+import com.phoenixcontact.arp.system.commons.services.io.IDirectoryService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the entries of remote directories, so expanding a folder again does not enumerate it on the plc.
+ *
+ * Directories are enumerated on the loader executor. Concurrent requests for the same directory share one enumeration.
+ * Entries are reloaded when they are older than the time to live or after they were invalidated,
+ * which must be done by every operation changing a directory.
+ */
+final class DirectoryCache {
+
+    private final IDirectoryService directoryService;
+    private final Executor loader;
+    private final ConcurrentHashMap<String, Listing> listings = new ConcurrentHashMap<>();
+    private volatile long ttlNanos;
+
+    /**
+     * @param loader
+     * Enumerates the directories.
+     * @param ttlMillis
+     * How long the entries of a directory are used, before they are enumerated again.
+     */
+    DirectoryCache(IDirectoryService directoryService, Executor loader, long ttlMillis){
+        this.directoryService = directoryService;
+        this.loader = loader;
+        setTtl(ttlMillis);
+    }
+
+    /**
+     * @param path
+     * The remote directory.
+     * @return
+     * The entries of the directory. Completes on the loader executor or at once, if the entries are cached.
+     * Completes exceptionally if the enumeration failed. Failures are not cached.
+     */
+    CompletableFuture<FileSystemEntry[]> list(String path){
+        var key = normalize(path);
+        var now = System.nanoTime();
+        var listing = listings.compute(key, (k, current) -> {
+            if(current != null && (!current.entries.isDone() || now - current.loadedAt < ttlNanos))
+                return current;
+            return new Listing(now, CompletableFuture.supplyAsync(() -> enumerate(k), loader));
+        });
+        //Do not keep failures, the next request tries again
+        listing.entries.whenComplete((entries, ex) -> {
+            if(ex != null)
+                listings.remove(key, listing);
+        });
+        return listing.entries;
+    }
+
+    /**
+     * Forgets the entries of the directory.
+     * @param path
+     */
+    void invalidate(String path){
+        listings.remove(normalize(path));
+    }
+
+    /**
+     * Forgets the entries of the directory and all its subdirectories, e.g. after it was removed.
+     * @param path
+     */
+    void invalidateTree(String path){
+        var key = normalize(path);
+        var prefix = key.endsWith("/") ? key : key + "/";
+        listings.keySet().removeIf(k -> k.equals(key) || k.startsWith(prefix));
+    }
+
+    /**
+     * Forgets the entries of the directory containing the path.
+     * @param path
+     * A file or directory.
+     */
+    void invalidateParent(String path){
+        invalidate(parentOf(path));
+    }
+
+    void clear(){
+        listings.clear();
+    }
+
+    long getTtl(){
+        return TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+    }
+
+    void setTtl(long ttlMillis){
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttlMillis));
+    }
+
+    /**
+     * @param path
+     * @return
+     * The path of the directory containing the path. The root for the root itself.
+     */
+    static String parentOf(String path){
+        var key = normalize(path);
+        var index = key.lastIndexOf('/');
+        return index <= 0 ? "/" : key.substring(0, index);
+    }
+
+    //Paths are stored without trailing slash, except the root
+    private static String normalize(String path){
+        var end = path.length();
+        while(end > 1 && path.charAt(end - 1) == '/')
+            end--;
+        return path.substring(0, end);
+    }
+
+    private FileSystemEntry[] enumerate(String path){
+        try{
+            var entries = directoryService.enumerateFileSystemEntries(path, "*", false);
+            return entries != null ? entries : new FileSystemEntry[0];
+        }
+        catch (Exception ex){
+            throw new CompletionException(ex);
+        }
+    }
+
+    private static final class Listing {
+        private final long loadedAt;
+        private final CompletableFuture<FileSystemEntry[]> entries;
+
+        private Listing(long loadedAt, CompletableFuture<FileSystemEntry[]> entries){
+            this.loadedAt = loadedAt;
+            this.entries = entries;
+        }
+    }
+}
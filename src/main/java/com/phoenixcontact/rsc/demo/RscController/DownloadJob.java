@@ -0,0 +1,182 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.arp.system.commons.services.io.*;
+import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import com.phoenixcontact.rsc.demo.Helper.CustomFileSystemEntry;
+import com.phoenixcontact.rsc.demo.Helper.SyncMode;
+import com.phoenixcontact.rsc.demo.Helper.TransferProgress;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Downloads a folder of the controller to the host.
+ *
+ * The calling thread is the producer: it enumerates the remote folders breadth first, creates the
+ * local folders and hands every file to the workers right away. So the enumeration of the next
+ * folders overlaps with the download of the files found so far.
+ * Local paths are built with java.nio, so the separator of the host is used.
+ *
+ * Every file is downloaded to a temporary path and renamed afterwards, see AtomicTransfer.
+ * In sync mode existing local files are compared with the attributes of the remote file and skipped if unchanged.
+ */
+public class DownloadJob extends TransferJob {
+
+    private final IFileService fileService;
+    private final IDirectoryService directoryService;
+    private final String source;
+    private final Path target;
+    private final boolean overwrite;
+    private final SyncMode mode;
+    private final boolean deleteExtras;
+    private final AtomicTransfer transfer;
+
+    /**
+     * @param source
+     * The remote folder to download.
+     * @param target
+     * The local folder the content of source is downloaded to. Created if it does not exist.
+     * @param overwrite
+     * If false, existing local files are not replaced and count as failed. Changed files are always replaced in sync mode.
+     * @param mode
+     * Which files are read.
+     * @param deleteExtras
+     * If true, local files and folders below target, which do not exist in source, are deleted.
+     * @param bufferSize
+     * The size of the buffers used to write the files to disk.
+     */
+    DownloadJob(IFileService fileService, IDirectoryService directoryService, CoreCommunication communication,
+                String source, Path target, boolean overwrite, SyncMode mode, boolean deleteExtras,
+                int concurrency, int bufferSize, Consumer<TransferProgress> progressListener){
+        super(communication, concurrency, progressListener);
+        this.fileService = fileService;
+        this.directoryService = directoryService;
+        this.source = source;
+        this.target = target;
+        this.overwrite = overwrite;
+        this.mode = mode;
+        this.deleteExtras = deleteExtras;
+        transfer = new AtomicTransfer(fileService, bufferSize);
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        var folders = new ArrayDeque<Folder>();
+        folders.add(new Folder(source, target));
+        //the local paths of everything in source, all others are extras
+        var expected = new HashSet<Path>();
+        while(!folders.isEmpty()){
+            checkCancelled();
+            var folder = folders.poll();
+            Files.createDirectories(folder.local);
+            expected.add(folder.local);
+
+            var entries = directoryService.enumerateFileSystemEntries(folder.remote, "*", false);
+            for(var entry : entries){
+                var local = folder.local.resolve(CustomFileSystemEntry.getName(entry));
+                expected.add(local);
+                if(entry.isDirectory())
+                    folders.add(new Folder(entry.getPath(), local));
+                else if(entry.isFile()){
+                    //The size is only known once the file is read
+                    addTotal(1, 0);
+                    var remote = entry.getPath();
+                    submit(remote, () -> read(remote, local));
+                }
+            }
+        }
+
+        //After the reads, so the walk does not run into the temporary files of running downloads
+        if(deleteExtras){
+            awaitSubmitted();
+            deleteExtras(expected);
+        }
+    }
+
+    //Deletes all local files and folders below target, which are not expected
+    private void deleteExtras(Set<Path> expected) throws IOException {
+        var deleted = new int[1];
+        Files.walkFileTree(target, new SimpleFileVisitor<>(){
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                checkCancelled();
+                if(!expected.contains(file) && !AtomicTransfer.isTemporary(file.getFileName().toString())
+                        && Files.deleteIfExists(file))
+                    deleted[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+
+            //A file removed by someone else during the walk is gone anyway
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex) throws IOException {
+                if(ex instanceof NoSuchFileException)
+                    return FileVisitResult.CONTINUE;
+                throw ex;
+            }
+
+            //The content of an extra folder is an extra as well and already deleted
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException ex) throws IOException {
+                if(ex != null && !(ex instanceof NoSuchFileException))
+                    throw ex;
+                if(!expected.contains(dir) && Files.deleteIfExists(dir))
+                    deleted[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        communication.log("Deleted " + deleted[0] + " extra files and folders below " + target);
+    }
+
+    private void read(String remote, Path local) throws Exception {
+        if(mode != SyncMode.ALL && Files.exists(local)){
+            var attributes = FileAttributes.read(fileService, remote, mode);
+            if(attributes != null && !attributes.differs(local, mode)){
+                skipped();
+                return;
+            }
+        }
+        else if(!overwrite && Files.exists(local)){
+            failed(remote, "The file " + local + " already exists");
+            return;
+        }
+
+        //The file gets the remote timestamp, so it compares equal next time
+        var size = new long[1];
+        var result = transfer.download(remote, local, count -> {
+            checkCancelled();
+            addBytes(count);
+            size[0] += count;
+        });
+        if(result.getValue() != FileSystemError.NONE.getValue()){
+            failed(remote, result);
+            return;
+        }
+        addTotal(0, size[0]);
+        done();
+    }
+
+    //A remote folder and the local folder it is downloaded to
+    private static final class Folder {
+        private final String remote;
+        private final Path local;
+
+        private Folder(String remote, Path local){
+            this.remote = remote;
+            this.local = local;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.ade.commonremoting.CoreType;
+import com.phoenixcontact.ade.commonremoting.utils.AdeObject;
+import com.phoenixcontact.ade.commonremoting.utils.OutParam;
+import com.phoenixcontact.arp.system.commons.services.io.*;
+import com.phoenixcontact.rsc.demo.Helper.SyncMode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32;
+
+/**
+ * The size, timestamp and optionally the CRC32 of a file on the controller, used to skip unchanged files.
+ *
+ * Timestamps are transferred as DATETIME ticks of 100 ns since 0001-01-01 UTC. Uploads in sync mode pass
+ * the modification time of the local file, downloads set it on the local file, so both sides carry the
+ * same timestamp after a transfer.
+ */
+final class FileAttributes {
+
+    //The ticks between 0001-01-01 and 1970-01-01
+    private static final long EPOCH_TICKS = 621355968000000000L;
+    private static final long TICKS_PER_MILLI = 10000;
+    //Timestamps closer than this are equal, some file systems only store two second steps
+    private static final long TIMESTAMP_TOLERANCE_MILLIS = 2000;
+
+    //-1 if unknown
+    private final long size;
+    private final long modifiedMillis;
+    private final long crc;
+
+    private FileAttributes(long size, long modifiedMillis, long crc){
+        this.size = size;
+        this.modifiedMillis = modifiedMillis;
+        this.crc = crc;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getModifiedMillis() {
+        return modifiedMillis;
+    }
+
+    /**
+     * Requests the attributes needed for the sync mode.
+     * @param mode
+     * @return
+     * The traits to pass to getFileAttributes or read.
+     */
+    static Traits traitsFor(SyncMode mode){
+        var traits = new Traits();
+        traits.add(Trait.LENGTH);
+        traits.add(Trait.TIMESTAMP);
+        if(mode == SyncMode.CHANGED_BY_HASH)
+            traits.add(Trait.CRC32);
+        return traits;
+    }
+
+    /**
+     * Reads the attributes of a remote file.
+     * @return
+     * The attributes or null if the file does not exist.
+     */
+    static FileAttributes read(IFileService fileService, String path, SyncMode mode) throws Exception {
+        var outItems = new OutParam<TraitItem[]>();
+        var result = fileService.getFileAttributes(traitsFor(mode), path, outItems);
+        if(result.getValue() != FileSystemError.NONE.getValue())
+            return null;
+        return of(outItems.getValue());
+    }
+
+    //Picks the attributes out of the trait items returned by the file service
+    static FileAttributes of(TraitItem[] items){
+        long size = -1;
+        long modified = -1;
+        long crc = -1;
+        if(items != null){
+            for(var item : items){
+                var flags = item.getTrait().getFlags();
+                var value = item.getValue() != null ? item.getValue().getValue() : null;
+                if(!(value instanceof Number))
+                    continue;
+                var number = ((Number) value).longValue();
+                if(flags.contains(Trait.LENGTH))
+                    size = number;
+                else if(flags.contains(Trait.TIMESTAMP))
+                    modified = toEpochMillis(number);
+                else if(flags.contains(Trait.CRC32))
+                    crc = number & 0xFFFFFFFFL;
+            }
+        }
+        return new FileAttributes(size, modified, crc);
+    }
+
+    /**
+     * Compares the remote attributes with a local file.
+     * An unknown attribute counts as difference, a file is only skipped if it is known to be unchanged.
+     * @return
+     * True if the file has to be transferred.
+     */
+    boolean differs(Path local, SyncMode mode) throws IOException {
+        if(mode == SyncMode.ALL || !Files.isRegularFile(local))
+            return true;
+        if(size < 0 || size != Files.size(local))
+            return true;
+        if(modifiedMillis < 0
+                || Math.abs(modifiedMillis - Files.getLastModifiedTime(local).toMillis()) > TIMESTAMP_TOLERANCE_MILLIS)
+            return true;
+        return mode == SyncMode.CHANGED_BY_HASH && (crc < 0 || crc != crc32(local));
+    }
+
+    //Sets the remote timestamp on the local file after a download
+    void applyTo(Path local) throws IOException {
+        if(modifiedMillis >= 0)
+            Files.setLastModifiedTime(local, FileTime.fromMillis(modifiedMillis));
+    }
+
+    /**
+     * @return
+     * The trait items passed to write, so the remote file gets the timestamp of the local one.
+     */
+    static TraitItem[] timestampOf(Path local) throws IOException {
+        var traits = new Traits();
+        traits.add(Trait.TIMESTAMP);
+        var item = new TraitItem();
+        item.setTrait(traits);
+        item.setValue(new AdeObject(CoreType.DATETIME, toTicks(Files.getLastModifiedTime(local).toMillis())));
+        return new TraitItem[]{ item };
+    }
+
+    static long crc32(Path local) throws IOException {
+        var crc = new CRC32();
+        var buffer = new byte[64 * 1024];
+        try(var in = Files.newInputStream(local)){
+            int count;
+            while((count = in.read(buffer)) >= 0)
+                crc.update(buffer, 0, count);
+        }
+        return crc.getValue();
+    }
+
+    private static long toEpochMillis(long ticks){
+        return (ticks - EPOCH_TICKS) / TICKS_PER_MILLI;
+    }
+
+    private static long toTicks(long epochMillis){
+        return epochMillis * TICKS_PER_MILLI + EPOCH_TICKS;
+    }
+}
@@ -6,17 +6,27 @@
 package com.phoenixcontact.rsc.demo.RscController;
 
 import com.phoenixcontact.ade.commonremoting.CommonRemotingException;
-import com.phoenixcontact.ade.commonremoting.utils.OutParam;
 import com.phoenixcontact.arp.system.commons.services.io.*;
 import com.phoenixcontact.arp.system.rsc.ServiceManager;
 import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
 import com.phoenixcontact.rsc.demo.Helper.CustomFileSystemEntry;
+import com.phoenixcontact.rsc.demo.Helper.PlaceholderEntry;
+import com.phoenixcontact.rsc.demo.Helper.RemoteTreeItem;
+import com.phoenixcontact.rsc.demo.Helper.SyncMode;
+import com.phoenixcontact.rsc.demo.Helper.TransferProgress;
+import javafx.application.Platform;
 import javafx.scene.control.TreeItem;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * 
@@ -27,29 +37,100 @@ import java.io.InputStream;
  */
 public class FileService {
 
+    //The number of files transferred at the same time by default
+    public static final int DEFAULT_CONCURRENCY = 4;
+    //The size of the buffers used to read and write local files by default
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    //How long the entries of a folder are cached by default
+    public static final long DEFAULT_CACHE_TTL = 30_000;
+    //The number of entries added to a folder of the tree at once
+    public static final int PAGE_SIZE = 500;
+
     private final CoreCommunication communication;
     private final IFileService fileService;
     private final IDirectoryService directoryService;
 
-    //Is inserted into every folder, to mark it as unfoldable in the TreeView
-    private final TreeItem<FileSystemEntry> dummyItem = new TreeItem<>(new FileSystemEntry());
+    //The folder transfer currently running, cancelled by cancelTransfer
+    private volatile TransferJob currentJob;
+    private final Object jobLock = new Object();
+    private volatile int concurrency = DEFAULT_CONCURRENCY;
+    private volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+    private volatile SyncMode syncMode = SyncMode.ALL;
+    private volatile boolean deleteExtras = false;
+
+    //Enumerates the folders of the tree in the background
+    private final ExecutorService loader;
+    private final DirectoryCache directoryCache;
+    //Changes of the tree are done by this executor, normally Platform::runLater
+    private final Executor uiExecutor;
+    //The nodes currently loaded, only touched on the FX thread
+    private final Map<TreeItem<FileSystemEntry>, CompletableFuture<Void>> loading = new HashMap<>();
+    //Shared by all nodes of the tree
+    private final Function<TreeItem<FileSystemEntry>, CompletableFuture<Void>> treeLoader = this::addFilesToNode;
 
 
     public FileService(ServiceManager sm, CoreCommunication communication) throws CommonRemotingException {
+        this(sm.getService(IFileService.class), sm.getService(IDirectoryService.class), communication, Platform::runLater);
+    }
+
+    /**
+     * Uses the cached services of a connection, e.g. one of many managed by a ConnectionManager.
+     * @param connection
+     * @param communication
+     * @throws CommonRemotingException
+     */
+    public FileService(ControllerConnection connection, CoreCommunication communication) throws CommonRemotingException {
+        this(connection.getService(IFileService.class), connection.getService(IDirectoryService.class), communication, Platform::runLater);
+    }
+
+    /**
+     * @param uiExecutor
+     * Changes the tree. The thread it runs on takes the role of the FX thread.
+     */
+    FileService(IFileService fileService, IDirectoryService directoryService, CoreCommunication communication, Executor uiExecutor) {
         this.communication = communication;
+        this.fileService = fileService;
+        this.directoryService = directoryService;
+
+        loader = Executors.newFixedThreadPool(2, r -> {
+            var thread = new Thread(r, "directory-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        directoryCache = new DirectoryCache(directoryService, loader, DEFAULT_CACHE_TTL);
+        this.uiExecutor = uiExecutor;
+    }
 
-        fileService = sm.getService(IFileService.class);
-        directoryService = sm.getService(IDirectoryService.class);
+    /**
+     * Uploads a file or folder to the plc
+     * @see #upload(String, FileSystemEntry, boolean, Consumer)
+     */
+    public boolean upload(String source, FileSystemEntry entry, boolean overwrite) {
+        return upload(source, entry, overwrite, null);
     }
 
-    //Uploads a files and folders to the plc
-    public synchronized void upload(String source, FileSystemEntry entry, boolean overwrite) {
+    /**
+     * Uploads a file or folder to the plc.
+     * Folders are uploaded with an UploadJob, which writes up to getConcurrency files at the same time.
+     * It can be stopped with cancelTransfer.
+     * @param source
+     * The path of the file or folder on the host.
+     * @param entry
+     * The folder to upload to. A file is overwritten if it has the same name as the source.
+     * A folder with the same name as the source is used as target, otherwise a subfolder is created.
+     * @param overwrite
+     * @param progress
+     * Receives the progress of folder uploads from the transfer threads. May be null.
+     * @return
+     * True if everything was uploaded.
+     */
+    public boolean upload(String source, FileSystemEntry entry, boolean overwrite, Consumer<TransferProgress> progress) {
 
        try{
             var sourceFile = new File(source);
             if(!sourceFile.exists()){
                 communication.error("The file does not exist");
-                return;
+                return false;
             }
             if (sourceFile.isFile()) {
                 var path = entry.getPath();
@@ -57,43 +138,39 @@ public class FileService {
                     //A file can only be overwritten if overwrite is set and the names match
                     if(!overwrite || !CustomFileSystemEntry.getName(entry).equals(sourceFile.getName())){
                         communication.error("The names must match to overwrite the file and the overwrite flag must be set");
-                        return;
+                        return false;
                     }
                 }
                 else
                     //When the destination is a folder the fileName is appended to the folder path
                     path = path + "/" + sourceFile.getName();
 
-                try (FileInputStream data = new FileInputStream(sourceFile)) {
+                //The move at the end would fail, checked before the file is streamed to the plc
+                if(!overwrite && fileService.exists(path)){
+                    communication.error("File already exists");
+                    return false;
+                }
+
+                //Written to a temporary file first, so the target is replaced at once. Large files are read from a memory mapping.
+                try (var data = LocalFiles.openForUpload(sourceFile.toPath(), bufferSize)) {
 
-                    var error = fileService.write(path, overwrite, new TraitItem[0], data);
+                    var error = new AtomicTransfer(fileService, bufferSize).upload(path, overwrite, new TraitItem[0], data);
 
                     if (FileSystemError.NONE.equals(error)) {
                         communication.message("Uploading file successful");
+                        return true;
                     } else {
                         communication.error("Upload unsuccessful");
+                        return false;
                     }
                 }
             }
             else if(entry.isDirectory() ){
-                CustomFileSystemEntry nextEntry;
-                if(sourceFile.getName().equals(CustomFileSystemEntry.getName(entry))){
-                    nextEntry = (CustomFileSystemEntry)entry;
-                }
-                else{
-                    var folderPath = entry.getPath() + "/" + sourceFile.getName();
-                    directoryService.create(folderPath);
-                    var newEntry = new CustomFileSystemEntry();
-                    newEntry.setPath(folderPath);
-                    newEntry.setDirectory(true);
-                    newEntry.setFile(false);
-                    nextEntry = newEntry;
-                }
-
-                for(var file : sourceFile.listFiles()){
-                    upload(file.getPath(), nextEntry, overwrite);
-                }
-
+                //Upload into the folder itself if the names match, otherwise into a new subfolder
+                var sameName = sourceFile.getName().equals(CustomFileSystemEntry.getName(entry));
+                var target = sameName ? entry.getPath() : entry.getPath() + "/" + sourceFile.getName();
+                return runJob(new UploadJob(fileService, directoryService, communication,
+                        sourceFile.toPath(), target, !sameName, overwrite, syncMode, deleteExtras, concurrency, bufferSize, progress));
             }
             else
                 communication.error("Cannot copy a folder into a file");
@@ -101,59 +178,254 @@ public class FileService {
         } catch (Exception ex) {
             communication.error("Upload failed");
         }
+        finally {
+            //Files or folders might have been written even if the upload failed
+            if(entry.isDirectory())
+                directoryCache.invalidateTree(entry.getPath());
+            else
+                directoryCache.invalidateParent(entry.getPath());
+        }
+        return false;
+    }
+
+    /**
+     * Stops the running folder transfer. Files already transferred are kept.
+     */
+    public void cancelTransfer(){
+        var job = currentJob;
+        if(job != null)
+            job.cancel();
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @param concurrency
+     * The maximum number of files transferred at the same time by folder transfers.
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
     }
 
-    //Downloads files and folders from the plc to the specified target.
-    public synchronized void download(FileSystemEntry source, String target, boolean overwrite) {
+    /**
+     * @param bufferSize
+     * The size of the buffers used to read and write local files. Every transfer thread holds its own buffers.
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(4096, bufferSize);
+    }
+
+    public SyncMode getSyncMode() {
+        return syncMode;
+    }
+
+    /**
+     * @param syncMode
+     * Which files are transferred by folder uploads and downloads. With ALL every file is copied.
+     */
+    public void setSyncMode(SyncMode syncMode) {
+        this.syncMode = syncMode;
+    }
+
+    public boolean isDeleteExtras() {
+        return deleteExtras;
+    }
+
+    /**
+     * @param deleteExtras
+     * If true, folder uploads and downloads delete files and folders at the destination, which do not exist at the source.
+     */
+    public void setDeleteExtras(boolean deleteExtras) {
+        this.deleteExtras = deleteExtras;
+    }
+
+    public long getCacheTtl() {
+        return directoryCache.getTtl();
+    }
+
+    /**
+     * @param ttlMillis
+     * How long the entries of a folder are shown from the cache, before the folder is enumerated again.
+     * Changes made by this service are shown at once. 0 disables the cache.
+     */
+    public void setCacheTtl(long ttlMillis) {
+        directoryCache.setTtl(ttlMillis);
+    }
+
+    /**
+     * Forgets all cached folders, so they are enumerated again when they are expanded.
+     */
+    public void clearCache() {
+        directoryCache.clear();
+    }
+
+    /**
+     * Stops loading folders. Called when the tab is closed.
+     */
+    public void close() {
+        cancelTransfer();
+        loader.shutdownNow();
+    }
+
+    //Runs the job on the calling thread. Only one job runs at a time.
+    private boolean runJob(TransferJob job){
+        synchronized (jobLock){
+            if(currentJob != null){
+                communication.error("Another transfer is still running");
+                return false;
+            }
+            currentJob = job;
+        }
+        try{
+            return job.run();
+        }
+        finally {
+            currentJob = null;
+        }
+    }
+
+    /**
+     * Downloads files and folders from the plc to the specified target.
+     * @see #download(FileSystemEntry, String, boolean, Consumer)
+     */
+    public boolean download(FileSystemEntry source, String target, boolean overwrite) {
+        return download(source, target, overwrite, null);
+    }
+
+    /**
+     * Downloads files and folders from the plc to the specified target.
+     * Folders are downloaded with a DownloadJob, which reads up to getConcurrency files at the same time.
+     * It can be stopped with cancelTransfer.
+     * @param source
+     * @param target
+     * The local path of the downloaded file or folder.
+     * @param overwrite
+     * @param progress
+     * Receives the progress of folder downloads from the transfer threads. May be null.
+     * @return
+     * True if everything was downloaded.
+     */
+    public boolean download(FileSystemEntry source, String target, boolean overwrite, Consumer<TransferProgress> progress) {
 
         try{
             var targetFile = new File(target);
             if(targetFile.exists()){
                 //If you want to overwrite a file the following conditions must not be met
-                if(! overwrite){
+                //A sync only replaces changed files, so it may always write into an existing folder
+                if(! overwrite && !(syncMode != SyncMode.ALL && source.isDirectory())){
                     communication.error("File already exists");
-                    return;
+                    return false;
                 }
                 else if(targetFile.isDirectory() ^ source.isDirectory()){
                     communication.error("Cannot override a file with a folder or vice vers");
-                    return;
+                    return false;
                 }
-                else if(targetFile.getName().equals(CustomFileSystemEntry.getName(source))){
+                else if(!targetFile.getName().equals(CustomFileSystemEntry.getName(source))){
                     communication.error("Names must match to overwrite");
-                    return;
+                    return false;
                 }
             }
 
             if(source.isFile()){
-                var traits = new Traits();
-
-                var outFileStream = new OutParam<InputStream>();
-                var outputTraits = new OutParam<TraitItem[]>();
-
-                var result = fileService.read(traits, source.getPath(), outFileStream, outputTraits);
-
-                if(FileSystemError.NONE.equals(result))
-                    try (var dataStream = outFileStream.getValue()){
-                    try (FileOutputStream output = new FileOutputStream(target, !overwrite)) {
-                        dataStream.transferTo(output);
-                    }}
+                //Written to a temporary file first, so the target is replaced at once
+                var result = new AtomicTransfer(fileService, bufferSize).download(source.getPath(), targetFile.toPath(), count -> {});
 
+                if(FileSystemError.NONE.equals(result)) {
+                    communication.message("Downloading file successful");
+                    return true;
+                }
                 else
                     communication.error("Downloading file unsuccessful");
 
             }
-            else { //If it is a folder create it, if it does not exist already and recursively download all files and folders
-                if(!targetFile.exists())
-                    targetFile.mkdir();
-                var files = directoryService.enumerateFileSystemEntries(source.getPath(), "*", false);
-                for(var file : files){
-                    download(file, targetFile.getPath() + "\\" + CustomFileSystemEntry.getName(file), overwrite);
-                }
+            else //Folders are enumerated ahead and their files are downloaded in parallel
+                return runJob(new DownloadJob(fileService, directoryService, communication,
+                        source.getPath(), targetFile.toPath(), overwrite, syncMode, deleteExtras, concurrency, bufferSize, progress));
+        }
+        catch (Exception ex){
+            communication.error("Download failed");
+        }
+        return false;
+    }
+
+    /**
+     * Uploads a file or folder as zip archive, which is packed while it is sent.
+     * Saves bandwidth for text files like logs and configurations. The archive is not unpacked on the plc.
+     * @param source
+     * The path of the file or folder on the host.
+     * @param entry
+     * The folder the archive is written to. It is named like the source with the extension .zip.
+     * @param overwrite
+     * @param progress
+     * Receives the progress of the upload. May be null.
+     * @return
+     * True if the archive was uploaded.
+     */
+    public boolean uploadArchive(String source, FileSystemEntry entry, boolean overwrite, Consumer<TransferProgress> progress) {
+        try{
+            var sourceFile = new File(source);
+            if(!sourceFile.exists()){
+                communication.error("The file does not exist");
+                return false;
             }
+            if(!entry.isDirectory()){
+                communication.error("An archive can only be uploaded into a folder");
+                return false;
+            }
+            var target = entry.getPath() + "/" + sourceFile.getName() + ".zip";
+            var uploaded = runJob(new ArchiveUploadJob(fileService, communication,
+                    sourceFile.toPath(), target, overwrite, bufferSize, progress));
+            if(uploaded)
+                communication.message("Uploaded the archive " + target + ", it is not unpacked on the plc");
+            return uploaded;
+        }
+        catch (Exception ex){
+            communication.error("Upload failed");
+        }
+        finally {
+            if(entry.isDirectory())
+                directoryCache.invalidate(entry.getPath());
+        }
+        return false;
+    }
+
+    /**
+     * Downloads a zip archive from the plc and unpacks it while it is read.
+     * @param source
+     * The archive on the plc.
+     * @param target
+     * The local folder the archive is unpacked to.
+     * @param overwrite
+     * If false, files which already exist are kept.
+     * @param progress
+     * Receives the progress of the download. May be null.
+     * @return
+     * True if every file of the archive was unpacked.
+     */
+    public boolean downloadArchive(FileSystemEntry source, String target, boolean overwrite, Consumer<TransferProgress> progress) {
+        try{
+            if(!source.isFile()){
+                communication.error("Only archives can be unpacked");
+                return false;
+            }
+            var targetFile = new File(target);
+            if(targetFile.isFile()){
+                communication.error("Cannot unpack an archive into a file");
+                return false;
+            }
+            return runJob(new ArchiveDownloadJob(fileService, communication,
+                    source.getPath(), targetFile.toPath(), overwrite, progress));
         }
         catch (Exception ex){
             communication.error("Download failed");
         }
+        return false;
     }
 
     //Removes filesystem entries with all it´s child nodes
@@ -177,25 +449,109 @@ public class FileService {
         catch(Exception ex){
             communication.error("Removing " + entry + " failed");
         }
+        finally {
+            directoryCache.invalidateParent(entry.getPath());
+            if(entry.isDirectory())
+                directoryCache.invalidateTree(entry.getPath());
+        }
 
     }
 
 
-    public synchronized void addFilesToNode(TreeItem<FileSystemEntry> node) {
-        try{
-            var path = node.getValue().getPath();
-            if (node.getValue().isDirectory()){
-                var children = node.getChildren();
-                children.removeAll(children);
-                for(var entry : directoryService.enumerateFileSystemEntries(path, "*", false)){
-                    var treeItem = createTreeItem(entry);
-                    children.add(treeItem);
-                }
+    /**
+     * Creates the node of a remote folder, which loads its entries when it is expanded.
+     * @param path
+     * The path of the folder on the plc, e.g. / for the root of the tree.
+     * @return
+     */
+    public RemoteTreeItem createRootItem(String path) {
+        var entry = new CustomFileSystemEntry();
+        entry.setPath(path);
+        entry.setDirectory(true);
+        entry.setFile(false);
+        return new RemoteTreeItem(entry, treeLoader);
+    }
+
+    /**
+     * Loads the entries of the folder into the node. Must be called on the FX thread.
+     * The folder is enumerated in the background, unless it is cached, meanwhile the node shows a placeholder.
+     * Large folders are added in pages of PAGE_SIZE entries. The last child loads the next page when it is expanded.
+     * @param node
+     * @return
+     * Completes on the FX thread, when the children of the node are set, or exceptionally if the folder could not be enumerated.
+     * Calls for a node, which is still loading, return the same future.
+     */
+    public CompletableFuture<Void> addFilesToNode(TreeItem<FileSystemEntry> node) {
+        var pending = loading.get(node);
+        if(pending != null)
+            return pending;
+        var folder = node.getValue();
+        if(!folder.isDirectory())
+            return CompletableFuture.completedFuture(null);
+
+        var done = new CompletableFuture<Void>();
+        loading.put(node, done);
+        var entries = directoryCache.list(folder.getPath());
+        //A reloaded node keeps showing its children until the new entries arrive
+        if(!entries.isDone() && node.getChildren().isEmpty())
+            node.getChildren().add(new TreeItem<>(new PlaceholderEntry(folder.getPath(), "Loading...")));
+
+        entries.whenCompleteAsync((result, ex) -> {
+            loading.remove(node);
+            if(ex != null){
+                node.getChildren().clear();
+                communication.error("Failed to expand tree");
+                done.completeExceptionally(ex);
             }
+            else {
+                addPage(node, result, 0);
+                done.complete(null);
+            }
+        }, uiExecutor);
+        return done;
+    }
+
+    //Replaces the children of the node with the first page or appends the page after the previous one
+    private void addPage(TreeItem<FileSystemEntry> node, FileSystemEntry[] entries, int from) {
+        //Nodes still present are kept, so reloading does not collapse their subfolders or load them again
+        var previous = new HashMap<String, TreeItem<FileSystemEntry>>();
+        if(from == 0)
+            for(var child : node.getChildren())
+                if(child instanceof RemoteTreeItem)
+                    previous.put(child.getValue().getPath(), child);
+
+        var to = Math.min(entries.length, from + PAGE_SIZE);
+        var page = new ArrayList<TreeItem<FileSystemEntry>>(to - from + 1);
+        for(var i = from; i < to; i++){
+            var existing = previous.get(entries[i].getPath());
+            if(existing != null && existing.getValue().isDirectory() == entries[i].isDirectory())
+                page.add(existing);
+            else
+                page.add(createTreeItem(entries[i]));
         }
-        catch (Exception ex){
-            communication.error("Failed to expand tree");
-        }
+        if(to < entries.length)
+            page.add(createMoreItem(node, entries, to));
+
+        if(from == 0)
+            node.getChildren().setAll(page);
+        else
+            node.getChildren().addAll(page);
+    }
+
+    //Is expanded to show the next page of a large folder
+    private TreeItem<FileSystemEntry> createMoreItem(TreeItem<FileSystemEntry> node, FileSystemEntry[] entries, int from) {
+        var text = "... " + (entries.length - from) + " more entries";
+        TreeItem<FileSystemEntry> moreItem = new TreeItem<>(new PlaceholderEntry(node.getValue().getPath(), text));
+        moreItem.getChildren().add(new TreeItem<>());
+        moreItem.expandedProperty().addListener(x -> {
+            if(moreItem.isExpanded())
+                //Not changed while the tree handles the expansion of the item
+                uiExecutor.execute(() -> {
+                    if(node.getChildren().remove(moreItem))
+                        addPage(node, entries, from);
+                });
+        });
+        return moreItem;
     }
 
 
@@ -204,12 +560,7 @@ public class FileService {
         customEntry.setDirectory(entry.isDirectory());
         customEntry.setFile(entry.isFile());
         customEntry.setPath(entry.getPath());
-        TreeItem<FileSystemEntry> treeItem = new TreeItem<>(customEntry);
-        if(customEntry.isDirectory()){
-            treeItem.getChildren().add(dummyItem);
-            treeItem.expandedProperty().addListener(x -> addFilesToNode(treeItem));
-        }
-        return treeItem;
+        return new RemoteTreeItem(customEntry, treeLoader);
     }
 
 
@@ -229,5 +580,9 @@ public class FileService {
         catch (Exception ex){
             communication.error("Failed to create Folder " + name + " under " + entry.getPath());
         }
+        finally {
+            if(entry.isDirectory())
+                directoryCache.invalidate(entry.getPath());
+        }
     }
 }
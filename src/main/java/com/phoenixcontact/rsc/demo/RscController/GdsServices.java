@@ -6,8 +6,8 @@
 package com.phoenixcontact.rsc.demo.RscController;
 
 import com.phoenixcontact.ade.commonremoting.CommonRemotingException;
+import com.phoenixcontact.ade.commonremoting.CoreType;
 import com.phoenixcontact.ade.commonremoting.utils.AdeObject;
-import com.phoenixcontact.ade.commonremoting.utils.OutParam;
 import com.phoenixcontact.arp.plc.gds.services.*;
 import com.phoenixcontact.arp.system.rsc.ServiceManager;
 import com.phoenixcontact.rsc.demo.Helper.*;
@@ -15,9 +15,21 @@ import javafx.application.Platform;
 import javafx.collections.ObservableList;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 
 /**
@@ -28,107 +40,271 @@ import java.util.concurrent.TimeUnit;
  */
 public class GdsServices {
 
+    //The name of the group used when no group is specified
+    public static final String DEFAULT_GROUP = "default";
+    //How long to wait before a failed restore of the subscriptions is tried again, while the connection stays up
+    public static final long RESTORE_RETRY_DELAY = 10_000;
+
     private final CoreCommunication communication;
-    //reference to the list displayed in the subscription table.
+    //reference to the list displayed in the subscription table. Only a view of the groups.
     private final ObservableList<SubscriptionView> gdsSubs;
+    //pushes the changed views of one refresh to the table in a single FX pulse, shared by all groups
+    private final FxBatchPublisher<SubscriptionView> tablePublisher;
 
     //The library services used by this class
     private final ISubscriptionService subService;
     private final IDataAccessService dataService;
 
+    //Every group holds its own subscription with its own kind and read cadence.
+    //Copy on write, so readers can look up groups without taking the lock of this class.
+    private volatile Map<String, SubscriptionGroup> groups;
+    //Recordings started by startRecording, stopped together with the subscriptions
+    private final List<RecordingStream> recordings;
+    private final ScheduledExecutorService updater;
+    //all changes of gdsSubs are done by this executor, because the methods of this class are not called on the FX thread
+    private final Executor uiExecutor;
+    //The connection the services belong to, null if built on plain services
+    private ControllerConnection connection;
+    private final ControllerConnection.StateListener connectionListener = this::connectionChanged;
+    //The groups whose subscription was lost with the session and is not created again yet
+    private final Set<SubscriptionGroup> unrestored = ConcurrentHashMap.newKeySet();
+    //The next attempt after a failed restore or null, guarded by this
+    private ScheduledFuture<?> restoreRetry;
 
-    //private boolean needSubscribe = true;
-    final BigInteger REFRESH_TIME = BigInteger.valueOf(100000);
-    private ScheduledThreadPoolExecutor updater;
-    private ScheduledFuture<?> updatetask;
+    public GdsServices(ServiceManager sm, CoreCommunication communication, ObservableList<SubscriptionView> gdsSubs) throws CommonRemotingException {
+        //A slow group must not delay the reads of a fast one
+        this(sm.getService(ISubscriptionService.class), sm.getService(IDataAccessService.class), communication, gdsSubs,
+                new ScheduledThreadPoolExecutor(2), Platform::runLater);
+    }
 
-    /*
-     * The id of the current subscription. -1 if no subscription is held.
-     * 
-     * Notes on the Subscription Service Interface:
-     * The lifecycle for a subscription looks as follows:
-     * 
-     * 	subId = subService.createSubscription(SubscriptionKind.DIRECT_READ);
-     *  subService.add(subId, "uri of variable1");
-     *  subservice.subscribe(subId, REFRESH_TIME);
-     *  repeat 
-     *  	//unsubscribe necessary to add new variable
-     *  	subService.unsubscribe(subId);	
-     *  	//change subscription
-     *  	subService.add(subId, "uri of variable2");
-     *  	or subService.remove(subId, "uri of varibable2");
-     *  	//resubscribe again. Subscribing does not return an error, but will fail silently
- *  		subService.resubscribe(subId, REFRESH_TIME); 
-     *  subService.unsubscribe(subId);
-     *  subService.deleteSubscription(subId);
-     *  subId = -1;
-     * 
+    /**
+     * Uses the services of a connection, e.g. one of many managed by a ConnectionManager.
+     * When the connection is lost, the updates are paused. When it is established again,
+     * the subscriptions are created again with all their variables and the updates are resumed.
+     * @param connection
+     * @param communication
+     * @param gdsSubs
+     * The list displayed in the subscription table.
+     * @throws CommonRemotingException
      */
-    private long subId;
+    public GdsServices(ControllerConnection connection, CoreCommunication communication, ObservableList<SubscriptionView> gdsSubs) throws CommonRemotingException {
+        this(connection.getService(ISubscriptionService.class), connection.getService(IDataAccessService.class), communication, gdsSubs,
+                new ScheduledThreadPoolExecutor(2), Platform::runLater);
+        this.connection = connection;
+        connection.addStateListener(connectionListener);
+    }
 
-    public GdsServices(ServiceManager sm, CoreCommunication communication, ObservableList<SubscriptionView> gdsSubs) throws CommonRemotingException {
+    /**
+     * Creates the services on top of the given library services, e.g. fakes to run without a controller and without the FX toolkit.
+     * @param subService
+     * @param dataService
+     * @param communication
+     * @param gdsSubs
+     * The list displayed in the subscription table.
+     * @param updater
+     * Reads the values of the subscription groups. Shut down by clean.
+     * @param uiExecutor
+     * Executes all changes of gdsSubs and the refresh of the table, normally Platform::runLater.
+     */
+    public GdsServices(ISubscriptionService subService, IDataAccessService dataService, CoreCommunication communication,
+                       ObservableList<SubscriptionView> gdsSubs, ScheduledExecutorService updater, Executor uiExecutor) {
         this.communication = communication;
         communication.addStopListener(this::removeAllSubscriptions);
         communication.addStartListener(this::newSubscription);
         this.gdsSubs = gdsSubs;
-        subService = sm.getService(ISubscriptionService.class);
-        dataService = sm.getService(IDataAccessService.class);
-        subId = -1;
-        newSubscription();
-        updater = new ScheduledThreadPoolExecutor(1);
+        this.uiExecutor = uiExecutor;
+        tablePublisher = new FxBatchPublisher<>(SubscriptionView::refresh, uiExecutor);
+        this.subService = subService;
+        this.dataService = dataService;
+        groups = Collections.emptyMap();
+        recordings = new ArrayList<>();
+        this.updater = updater;
+        addGroup(DEFAULT_GROUP, SubscriptionKind.DIRECT_READ, 100);
     }
 
 
     public synchronized void clean() {
-        updatetask.cancel(false);
+        if(connection != null)
+            connection.removeStateListener(connectionListener);
+        if(restoreRetry != null)
+            restoreRetry.cancel(false);
+        for(var group : groups.values())
+            group.clean();
+        stopRecordings();
         updater.shutdown();
-        ((Action) () -> subService.unsubscribe(subId)).silence().run();
-        ((Action) () -> subService.deleteSubscription(subId)).silence().run();
+    }
+
+    /**
+     * Creates the subscriptions of all groups again with all their variables and resumes the updates.
+     * Called when the connection was established again, because the subscriptions are lost together with the session.
+     */
+    public synchronized void restoreSubscriptions(){
+        unrestored.addAll(groups.values());
+        restorePending();
+    }
+
+    //Called on the thread which changed the state of the connection
+    private void connectionChanged(ControllerConnection connection, ConnectionState previous, ConnectionState current){
+        //Marked at once, the session and its subscriptions are gone even if the connection fails again before the restore
+        if(current == ConnectionState.CONNECTED && previous != ConnectionState.DISCONNECTED)
+            unrestored.addAll(groups.values());
+        else if(current != ConnectionState.FAILED || previous != ConnectionState.CONNECTED)
+            return;
+        try{
+            updater.execute(this::syncWithConnection);
+        }
+        catch (Exception ex){
+            //the updater is shut down by clean
+        }
+    }
+
+    /*
+     * Pauses the updates while the connection is down and restores the marked groups when it is up.
+     * Runs on the updater, whose threads can run the calls out of order. So only the current state counts,
+     * not the change which scheduled the call, and the last call always matches the last change.
+     */
+    private synchronized void syncWithConnection(){
+        //This call does what a pending retry would do
+        if(restoreRetry != null)
+            restoreRetry.cancel(false);
+        restoreRetry = null;
+        if(connection.getState() == ConnectionState.CONNECTED)
+            restorePending();
+        else
+            //Reading a lost connection only produces errors until it is back
+            pauseUpdates();
+    }
+
+    //Creates the subscriptions of the unrestored groups. Groups which fail stay marked and are tried again later.
+    private synchronized void restorePending(){
+        var restored = 0;
+        var failed = false;
+        var lost = new ArrayList<String>();
+        for(var group : groups.values()){
+            if(!unrestored.remove(group))
+                continue;
+            try{
+                lost.addAll(group.restore());
+                restored++;
+            }
+            catch (Exception ex){
+                unrestored.add(group);
+                failed = true;
+                communication.error("Restoring the subscription group " + group.getName() + " failed");
+            }
+        }
+        if(!lost.isEmpty())
+            communication.error("Could not subscribe again to " + String.join(", ", lost));
+        else if(restored > 0 && !failed)
+            communication.message("Restored the subscriptions after the connection was lost");
+
+        //If the connection fails meanwhile, the next CONNECTED tries again anyway
+        if(failed && connection != null && restoreRetry == null){
+            try{
+                restoreRetry = updater.schedule(this::syncWithConnection, RESTORE_RETRY_DELAY, TimeUnit.MILLISECONDS);
+            }
+            catch (Exception ex){
+                //the updater is shut down by clean
+            }
+        }
+    }
+
+    private synchronized void pauseUpdates(){
+        for(var group : groups.values())
+            group.pause();
+        if(!recordings.isEmpty()){
+            stopRecordings();
+            communication.error("The recordings were stopped, because the connection was lost");
+        }
+    }
+
+    /**
+     * Adds a new subscription group. Variables subscribed to this group are read every intervalMillis.
+     * @param name
+     * The name used to address the group in subscribe.
+     * @param kind
+     * The kind of the subscription created on the controller.
+     * @param intervalMillis
+     * The sample rate of the subscription and the interval in which the values are read.
+     * @return
+     * False if the group already exists or the arguments are invalid.
+     */
+    public synchronized boolean addGroup(String name, SubscriptionKind kind, long intervalMillis){
+        if(groups.containsKey(name)){
+            communication.error("The subscription group " + name + " already exists");
+            return false;
+        }
+        if(intervalMillis <= 0){
+            communication.error("The interval of a subscription group must be positive");
+            return false;
+        }
+        var group = new SubscriptionGroup(name, kind, intervalMillis,
+                communication, subService, dataService, gdsSubs, tablePublisher, updater, uiExecutor);
+        group.newSubscription();
+        var copy = new LinkedHashMap<>(groups);
+        copy.put(name, group);
+        groups = Collections.unmodifiableMap(copy);
+        return true;
+    }
+
+    /**
+     * Removes a subscription group together with all its subscriptions. The default group cannot be removed.
+     * @param name
+     */
+    public synchronized void removeGroup(String name){
+        if(DEFAULT_GROUP.equals(name)){
+            communication.error("The default subscription group cannot be removed");
+            return;
+        }
+        var group = groups.get(name);
+        if(group != null){
+            var copy = new LinkedHashMap<>(groups);
+            copy.remove(name);
+            groups = Collections.unmodifiableMap(copy);
+            unrestored.remove(group);
+            group.removeAllSubscriptions();
+            group.clean();
+        }
+        else
+            communication.error("There is no subscription group " + name);
+    }
+
+    /**
+     * @return
+     * The names of all subscription groups, starting with the default group.
+     */
+    public List<String> getGroupNames(){
+        return new ArrayList<>(groups.keySet());
     }
 
 
     //example uri : Arp.Plc.Eclr/MainInstance.TempValue
-    public synchronized void subscribe(String uri){
+    public void subscribe(String uri){
+        subscribe(uri, DEFAULT_GROUP);
+    }
+
+    /**
+     * Subscribes to the uri in the given group.
+     * @param uri
+     * @param groupName
+     */
+    public synchronized void subscribe(String uri, String groupName){
 
         try{
-            if(gdsSubs.stream().anyMatch(x -> x.getUri().equals(uri))){
-                communication.error("Subscription to that uri already exists");
+            var group = groups.get(groupName);
+            if(group == null){
+                communication.error("There is no subscription group " + groupName);
                 return;
             }
-
-            DataAccessError result;
-            if(gdsSubs.size() == 0){
-                result = mergeResults(
-                        () -> subService.addVariable(subId, uri),
-                        () -> subService.subscribe(subId, REFRESH_TIME)
-                );
-            }
-            else {
-                result = mergeResults(
-                        () -> subService.unsubscribe(subId),
-                        () -> subService.addVariable(subId, uri),
-                        () -> subService.resubscribe(subId, REFRESH_TIME)
-                );
+            if(findGroup(uri) != null){
+                communication.error("Subscription to that uri already exists");
+                return;
             }
 
+            var result = group.changeVariables(List.of(uri), List.of()).get(uri);
             switch (result){
                 case NONE:
-
-                    //Read the uri for the first time.
-                    var item = dataService.readSingle(uri);
-                    if(item.getError().getValue() == DataAccessError.NONE.getValue()){
-                        var value = item.getValue();
-                        var view = new SubscriptionView(uri, value);
-                        gdsSubs.add(view);
-                        if(updatetask == null || updatetask.isCancelled()){
-                            updatetask = updater.scheduleAtFixedRate(this::updateSubs, 50, 100, TimeUnit.MILLISECONDS);
-                        }
-                        communication.message("Successfully subscribed to " + uri);
-                    }
-                    else{
-                        communication.error("Test reading the uri failed");
-                    }
-
+                    communication.message("Successfully subscribed to " + uri);
                     break;
                 case NOT_EXISTS:
                     communication.error("The requested uri does not exist");
@@ -145,6 +321,64 @@ public class GdsServices {
 
     }
 
+    /**
+     * Adds and removes many variables of the default group at once.
+     * @see #subscribeAll(String, Collection, Collection)
+     */
+    public Map<String, DataAccessError> subscribeAll(Collection<String> add, Collection<String> remove){
+        return subscribeAll(DEFAULT_GROUP, add, remove);
+    }
+
+    /**
+     * Adds and removes many variables at once.
+     * All changes are applied within one unsubscribe/resubscribe cycle and the new uris are
+     * validated with a single read instead of one read per uri.
+     * @param groupName
+     * The group to add the uris to and remove them from.
+     * @param add
+     * The uris to subscribe to. Uris which are already subscribed in this group are reported as NONE.
+     * @param remove
+     * The uris to unsubscribe from.
+     * @return
+     * The result for every uri in add and remove, in that order.
+     * If the call failed completely an empty map is returned.
+     */
+    public synchronized Map<String, DataAccessError> subscribeAll(String groupName, Collection<String> add, Collection<String> remove){
+        try{
+            var group = groups.get(groupName);
+            if(group == null){
+                communication.error("There is no subscription group " + groupName);
+                return new LinkedHashMap<>();
+            }
+
+            //A uri may only be part of one group
+            var newUris = new ArrayList<String>();
+            var taken = new LinkedHashMap<String, DataAccessError>();
+            for(var uri : add){
+                var owner = findGroup(uri);
+                if(owner == null || owner == group)
+                    newUris.add(uri);
+                else
+                    taken.put(uri, DataAccessError.NOT_SUPPORTED);
+            }
+
+            var results = group.changeVariables(newUris, remove);
+            results.putAll(taken);
+            var failed = results.values().stream()
+                    .filter(x -> x.getValue() != DataAccessError.NONE.getValue())
+                    .count();
+            if(failed == 0)
+                communication.message("Successfully changed " + results.size() + " subscriptions");
+            else
+                communication.error("Changing " + failed + " of " + results.size() + " subscriptions failed");
+            return results;
+        }
+        catch(Exception ex){
+            communication.error("Changing the subscriptions failed");
+            return new LinkedHashMap<>();
+        }
+    }
+
     /**
      * Execute Commands until one throws an Exception or returns an Error Code.
      * @param args
@@ -155,7 +389,7 @@ public class GdsServices {
      * If one of the arguments throws it will not be caught.
      */
     @SafeVarargs
-	private static DataAccessError mergeResults(Creator<DataAccessError> ...args ) throws Exception{
+    static DataAccessError mergeResults(Creator<DataAccessError> ...args ) throws Exception{
         final var noneValue = DataAccessError.NONE.getValue();
         for(var creator : args){
             var result  = creator.run();
@@ -166,67 +400,104 @@ public class GdsServices {
         return DataAccessError.NONE;
     }
 
-    //Periodically reads the Values of the subscriptions and updates the view
-    private synchronized void updateSubs() {
+    /**
+     * Records the variables on the controller in every task cycle and streams the values to the consumer.
+     * Unlike the subscription groups no value between two reads is lost.
+     * @param uris
+     * The variables to record.
+     * @param recordCount
+     * The number of records buffered on the controller between two drains.
+     * @param drainIntervalMillis
+     * The interval in which the buffered records are read.
+     * @param consumer
+     * Receives the samples of every drain in the order they were recorded. Called on the update thread.
+     * @return
+     * The running stream or null if the recording could not be started.
+     */
+    public synchronized RecordingStream startRecording(Collection<String> uris, short recordCount, long drainIntervalMillis,
+                                                       Consumer<List<RecordedSample>> consumer){
+        if(uris.isEmpty() || recordCount <= 0 || drainIntervalMillis <= 0){
+            communication.error("Invalid arguments for the recording");
+            return null;
+        }
+        var stream = new RecordingStream(uris, SubscriptionKind.RECORDING, recordCount, BigInteger.ZERO, drainIntervalMillis,
+                consumer, communication, subService, updater);
+        if(!stream.start())
+            return null;
+        recordings.add(stream);
+        return stream;
+    }
 
-        try{
-            var outInfos = new OutParam<VariableInfo[]>();
-            var outValues = new OutParam<AdeObject[]>();
-            var result = mergeResults(
-                    () -> subService.getVariableInfos(subId, outInfos),
-                    () -> subService.readValues(subId, outValues));
-
-            if (DataAccessError.NONE.equals(result)) {
-                var infos = outInfos.getValue();
-                var values = outValues.getValue();
-
-                for (int i = 0; i < Math.min(infos.length, values.length); i++) {
-
-                    var info = infos[i];
-                    var value = values[i];
-
-                    //Find the SubscriptionView with the corresponding uri and update it.
-                    gdsSubs.stream()
-                            .filter(view -> view.getUri().equals(info.getName()))
-                            .findFirst()
-                            .ifPresentOrElse(
-                                view -> {
-                                    view.setObject(value);
-                                    Platform.runLater(() -> {
-                                        var index = gdsSubs.indexOf(view);
-                                        if(index >= 0)
-                                            gdsSubs.set(index, view);
-                                    }); },
-                                () -> communication.error("No such uri in subscription list"));
+    /**
+     * Stops a recording started with startRecording.
+     * @param stream
+     */
+    public synchronized void stopRecording(RecordingStream stream){
+        stream.stop();
+        recordings.remove(stream);
+    }
 
-                }
-            }
-        }
-        catch (Exception ex){
-            communication.error("Update failed");
-        }
+    private void stopRecordings(){
+        for(var stream : recordings)
+            stream.stop();
+        recordings.clear();
+    }
+
+    /**
+     * Sets a deadband for a subscribed R4 or R8 variable.
+     * The value in the table is only updated, when it differs from the displayed value by more than the deadband.
+     * @param uri
+     * @param deadband
+     * 0 disables the deadband.
+     */
+    public void setDeadband(String uri, double deadband){
+        var group = findGroup(uri);
+        if(group == null || !group.setDeadband(uri, deadband))
+            communication.error("No subscription to " + uri);
+    }
+
+    /**
+     * The values of the last refresh of a group. Never blocks, not even while subscriptions are changed.
+     * @param groupName
+     * @return
+     * The snapshot or an empty one if the group does not exist.
+     */
+    public ValueSnapshot getSnapshot(String groupName){
+        var group = groups.get(groupName);
+        return group == null ? ValueSnapshot.EMPTY : group.getSnapshot();
+    }
 
+    /**
+     * The last read value of a subscribed uri. Never blocks.
+     * @param uri
+     * @return
+     * The value or null if the uri is not subscribed or was not read yet.
+     */
+    public AdeObject getValue(String uri){
+        var group = findGroup(uri);
+        return group == null ? null : group.getSnapshot().get(uri);
+    }
+
+    /**
+     * @return
+     * The number of table updates that were dropped, because a newer value arrived before the ui displayed them.
+     */
+    public long getCoalescedUpdates(){
+        return tablePublisher.getCoalescedCount();
     }
 
     public synchronized void unsubscribe(SubscriptionView subscription){
         try {
-            var result = mergeResults(
-                    () -> subService.unsubscribe(subId),
-                    () -> subService.removeVariable(subId, subscription.getUri()),
-                    () -> subService.resubscribe(subId, REFRESH_TIME)
-            );
-
-            var resultValue = result.getValue();
-            if(resultValue == DataAccessError.NONE.getValue()
-                    || resultValue == DataAccessError.NOT_EXISTS.getValue()){
-                communication.message("Successfully unsubscribed from " + subscription.getUri());
-                gdsSubs.remove(subscription);
-                if(gdsSubs.size() == 0)
-                    //needSubscribe = true;
-                    if(updatetask != null && !updatetask.isCancelled())
-                        updatetask.cancel(false);
-
+            var group = findGroup(subscription.getUri());
+            var result = group == null
+                    ? DataAccessError.NOT_EXISTS
+                    : group.changeVariables(List.of(), List.of(subscription.getUri())).get(subscription.getUri());
 
+            if(result.getValue() == DataAccessError.NONE.getValue()
+                    || result.getValue() == DataAccessError.NOT_EXISTS.getValue()){
+                communication.message("Successfully unsubscribed from " + subscription.getUri());
+                //a view that was not in a group anymore is removed from the table as well
+                uiExecutor.execute(() -> gdsSubs.remove(subscription));
             }
             else
                 communication.error("Unsubscribing from " + subscription.getUri() +" failed");
@@ -239,25 +510,15 @@ public class GdsServices {
 
 
 
-    public synchronized void write(SubscriptionView selected, String valueString){
+    //Does not need the lock, writing does not touch the subscriptions
+    public void write(SubscriptionView selected, String valueString){
         try {
             //Create the WriteItem which is passed to the DataAccessService
-            var item = new WriteItem();
-            item.setPortName(selected.getUri());
-
-            //create the value for the writeItem, consisting of a type and value
-            var obj = new AdeObject();
-            //read the type from the SubscriptionView
-            var type = selected.getType();
-            obj.setCoreType(type);
-            //parse the content of the valueString to match the CoreType
-            var value = SubscriptionView.parseToCoreType(type, valueString);
-            if(value == null){
+            var item = createWriteItem(selected.getUri(), selected.getType(), valueString);
+            if(item == null){
                 communication.error("Parsing the value to the variable type failed");
                 return;
             }
-            obj.setValue(value);
-            item.setValue(obj);
 
             //Write to the via the DataAccessService
             var result = dataService.writeSingle(item);
@@ -273,30 +534,139 @@ public class GdsServices {
         }
     }
 
-    public synchronized void removeAllSubscriptions(){
-        try{
-            subService.unsubscribe(subId);
-            subService.deleteSubscription(subId);
-            updatetask.cancel(true);
-            subId = -1;
-            gdsSubs.removeAll(gdsSubs);
+    /**
+     * Writes many variables with a single call to the DataAccessService, e.g. to download a recipe.
+     * The types of subscribed variables are taken from their views, the types of all others
+     * are read with one call before writing.
+     * @param values
+     * The value string for every uri, parsed according to the type of the variable.
+     * @param allOrReport
+     * If set, nothing is written when a single item can not be parsed or its type can not be read.
+     * Only the failed items are reported then.
+     * Otherwise all valid items are written and the invalid ones are reported.
+     * @return
+     * The result per uri in the order of values. Items which are not written because of
+     * allOrReport are missing. If the call failed completely an empty map is returned.
+     */
+    public Map<String, DataAccessError> writeAll(Map<String, String> values, boolean allOrReport){
+        var results = new LinkedHashMap<String, DataAccessError>();
+        try {
+            //Look up the types, reading all unknown ones at once
+            var types = new HashMap<String, CoreType>();
+            var unknown = new ArrayList<String>();
+            for(var uri : values.keySet()){
+                var group = findGroup(uri);
+                var view = group == null ? null : group.get(uri);
+                if(view != null)
+                    types.put(uri, view.getType());
+                else
+                    unknown.add(uri);
+            }
+            if(!unknown.isEmpty()){
+                var items = dataService.read(unknown.toArray(new String[0]));
+                for(int i = 0; i < Math.min(items.length, unknown.size()); i++){
+                    if(items[i].getError().getValue() == DataAccessError.NONE.getValue())
+                        types.put(unknown.get(i), items[i].getValue().getCoreType());
+                    else
+                        results.put(unknown.get(i), items[i].getError());
+                }
+            }
+
+            var items = new ArrayList<WriteItem>(values.size());
+            for(var entry : values.entrySet()){
+                var uri = entry.getKey();
+                var type = types.get(uri);
+                if(type == null){
+                    results.putIfAbsent(uri, DataAccessError.NOT_EXISTS);
+                    continue;
+                }
+                var item = createWriteItem(uri, type, entry.getValue());
+                if(item == null)
+                    results.put(uri, DataAccessError.TYPE_MISMATCH);
+                else
+                    items.add(item);
+            }
+
+            if(allOrReport && !results.isEmpty()){
+                communication.error("Writing aborted, " + results.size() + " of " + values.size() + " values are invalid");
+                return results;
+            }
+
+            if(!items.isEmpty()){
+                var errors = dataService.write(items.toArray(new WriteItem[0]));
+                for(int i = 0; i < items.size(); i++)
+                    results.put(items.get(i).getPortName(), i < errors.length ? errors[i] : DataAccessError.NOT_EXISTS);
+            }
+
+            //Report in the order of the arguments
+            var ordered = new LinkedHashMap<String, DataAccessError>();
+            for(var uri : values.keySet())
+                ordered.put(uri, results.get(uri));
+
+            var failed = ordered.values().stream()
+                    .filter(x -> x.getValue() != DataAccessError.NONE.getValue())
+                    .count();
+            if(failed == 0)
+                communication.message("Succesfully wrote " + ordered.size() + " values");
+            else
+                communication.error("Writing " + failed + " of " + ordered.size() + " values failed");
+            return ordered;
         }
-        catch(Exception ex){
-            communication.error("Deleting all subscriptions failed");
+        catch (Exception ex){
+            communication.error("Writing " + values.size() + " values failed");
+            return new LinkedHashMap<>();
         }
+    }
 
+    /**
+     * Creates the WriteItem which is passed to the DataAccessService
+     * @param uri
+     * @param type
+     * The type of the variable
+     * @param valueString
+     * The value parsed according to the type
+     * @return
+     * The item or null if the valueString does not match the type
+     */
+    private static WriteItem createWriteItem(String uri, CoreType type, String valueString){
+        //parse the content of the valueString to match the CoreType
+        var value = SubscriptionView.parseToCoreType(type, valueString);
+        if(value == null)
+            return null;
+
+        //create the value for the writeItem, consisting of a type and value
+        var obj = new AdeObject();
+        obj.setCoreType(type);
+        obj.setValue(value);
+
+        var item = new WriteItem();
+        item.setPortName(uri);
+        item.setValue(obj);
+        return item;
     }
 
-    public void newSubscription(){
-        try {
-            if(subId != -1)
-                subService.deleteSubscription(subId);
-            subId = subService.createSubscription(SubscriptionKind.DIRECT_READ);
+    public synchronized void removeAllSubscriptions(){
+        for(var group : groups.values())
+            group.removeAllSubscriptions();
+        stopRecordings();
+    }
 
-        }catch (Exception ex){
+    public synchronized void newSubscription(){
+        for(var group : groups.values())
+            group.newSubscription();
+    }
 
-        }
+    //The group holding the uri or null
+    private SubscriptionGroup findGroup(String uri){
+        for(var group : groups.values())
+            if(group.contains(uri))
+                return group;
+        return null;
+    }
 
+    //The group with the name or null
+    SubscriptionGroup getGroup(String name){
+        return groups.get(name);
     }
 
 
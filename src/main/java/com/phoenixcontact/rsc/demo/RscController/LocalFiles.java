@@ -0,0 +1,178 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Local file access of the transfers based on FileChannel.
+ *
+ * The file service takes and returns InputStreams, so the data always passes a byte[] on its way to or
+ * from the connection. These methods avoid the additional copies of the local side: large files are
+ * read from a memory mapping instead of read calls, and downloads are gathered in a direct buffer,
+ * so the channel writes large blocks without copying them into a temporary buffer first.
+ */
+final class LocalFiles {
+
+    //Files of at least this size are mapped for uploads
+    static final long MAP_THRESHOLD = 16L * 1024 * 1024;
+    //The size of one mapped region
+    private static final long REGION_SIZE = 256L * 1024 * 1024;
+
+    private LocalFiles(){
+    }
+
+    /**
+     * Opens a local file for an upload.
+     * @param path
+     * @param bufferSize
+     * The buffer size of files too small to be mapped.
+     * @return
+     * A stream reading from a memory mapping for large files, a buffered channel stream otherwise.
+     */
+    static InputStream openForUpload(Path path, int bufferSize) throws IOException {
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try{
+            if(channel.size() >= MAP_THRESHOLD)
+                return new MappedInputStream(channel);
+            return new BufferedInputStream(Channels.newInputStream(channel), bufferSize);
+        }
+        catch(IOException | RuntimeException ex){
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Copies a stream into a channel. Reads into heap, gathers in direct and writes when direct is full.
+     * @param data
+     * @param channel
+     * @param heap
+     * @param direct
+     * A direct buffer, cleared before use.
+     * @param written
+     * Called after every write to the channel with the number of bytes written. May throw to stop the copy.
+     * @return
+     * The number of bytes copied.
+     */
+    static long copy(InputStream data, FileChannel channel, byte[] heap, ByteBuffer direct, Written written) throws IOException {
+        direct.clear();
+        long total = 0;
+        int count;
+        while((count = data.read(heap, 0, Math.min(heap.length, direct.remaining()))) >= 0){
+            direct.put(heap, 0, count);
+            if(!direct.hasRemaining())
+                total += flush(channel, direct, written);
+        }
+        return total + flush(channel, direct, written);
+    }
+
+    private static int flush(FileChannel channel, ByteBuffer direct, Written written) throws IOException {
+        direct.flip();
+        var count = direct.remaining();
+        while(direct.hasRemaining())
+            channel.write(direct);
+        direct.clear();
+        if(count > 0)
+            written.accept(count);
+        return count;
+    }
+
+    /**
+     * Receives the progress of copy.
+     */
+    interface Written {
+        void accept(int count) throws IOException;
+    }
+
+    /*
+     * Reads a file through memory mappings of REGION_SIZE, so the pages are read by the os on demand
+     * and copied once into the buffer of the reader. The mappings are released by the garbage collector.
+     */
+    private static final class MappedInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long size;
+        private long regionStart;
+        private ByteBuffer region;
+
+        private MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            regionStart = 0;
+            region = map(0);
+        }
+
+        private MappedByteBuffer map(long start) throws IOException {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+        }
+
+        //Maps the next region when the current one is exhausted. False at the end of the file.
+        private boolean ensureRemaining() throws IOException {
+            if(region.hasRemaining())
+                return true;
+            var next = regionStart + region.capacity();
+            if(next >= size)
+                return false;
+            regionStart = next;
+            region = map(next);
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return ensureRemaining() ? region.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if(length == 0)
+                return 0;
+            if(!ensureRemaining())
+                return -1;
+            var count = Math.min(length, region.remaining());
+            region.get(buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            var position = Math.min(size, regionStart + region.position() + Math.max(0, count));
+            var skipped = position - (regionStart + region.position());
+            if(position < regionStart + region.capacity())
+                region.position((int) (position - regionStart));
+            else if(position < size){
+                regionStart = position;
+                region = map(position);
+            }
+            else{
+                //at the end, nothing left to map
+                regionStart = size;
+                region = ByteBuffer.allocate(0);
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available(){
+            return (int) Math.min(Integer.MAX_VALUE, size - regionStart - region.position());
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
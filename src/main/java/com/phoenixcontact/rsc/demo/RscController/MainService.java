@@ -9,10 +9,15 @@ import com.phoenixcontact.ade.commonremoting.CommonRemotingException;
 import com.phoenixcontact.arp.device.iface.services.IDeviceControlService;
 import com.phoenixcontact.arp.plc.domain.services.IPlcManagerService2;
 import com.phoenixcontact.arp.plc.domain.services.PlcStartKind;
-import com.phoenixcontact.arp.plc.domain.services.PlcState;
-import com.phoenixcontact.arp.plc.domain.services.PlcStates;
 import com.phoenixcontact.arp.system.rsc.ServiceManager;
+import com.phoenixcontact.rsc.demo.Helper.CommandReport;
 import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import javafx.application.Platform;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The background service for the MainTab
@@ -24,89 +29,148 @@ public class MainService {
 
     private final CoreCommunication communication;
 
-    private final IPlcManagerService2 plcService;
-
     private final IDeviceControlService deviceControlService;
 
+    //Runs the service calls of the commands, so the FX thread is not blocked
+    private final ExecutorService commandExecutor;
+
+    private final PlcCommands commands;
+
+    //False if the session ends with a reboot of the controller, because the services are not connected again
+    private final boolean survivesReboot;
+
+    /**
+     * The commands complete when the calls returned, because the state of the plc can only be awaited on a connection.
+     * @param sm
+     * @param communication
+     * @throws CommonRemotingException
+     */
     public MainService(ServiceManager sm, CoreCommunication communication) throws CommonRemotingException {
-        plcService = sm.getService(IPlcManagerService2.class);
+        var plcService = sm.getService(IPlcManagerService2.class);
         deviceControlService = sm.getService(IDeviceControlService.class);
         this.communication = communication;
+        commandExecutor = createCommandExecutor();
+        commands = new PlcCommands("plc", plcService, deviceControlService, null, commandExecutor);
+        survivesReboot = false;
     }
 
     /**
-     * Reads the current state of the controller
+     * Uses the cached services of a connection, e.g. one of many managed by a ConnectionManager.
+     * @param connection
+     * @param communication
+     * @throws CommonRemotingException
+     */
+    public MainService(ControllerConnection connection, CoreCommunication communication) throws CommonRemotingException {
+        deviceControlService = connection.getService(IDeviceControlService.class);
+        this.communication = communication;
+        commandExecutor = createCommandExecutor();
+        commands = new PlcCommands(connection, commandExecutor);
+        survivesReboot = true;
+    }
+
+    /**
+     * The commands used by start and stop, e.g. to make a warm start.
      * @return
      */
-    public synchronized PlcStates getStatus(){
-        try {
-            return plcService.getPlcState();
-        }
-        catch(Exception ex){
-            communication.error("Retrieving status failed");
-        }
-        var emptyState = new PlcStates();
-        emptyState.add(PlcState.NONE);
-        return emptyState;
+    public PlcCommands getCommands() {
+        return commands;
+    }
+
+    /**
+     * Stops the command thread. A command in progress is completed.
+     */
+    public void clean() {
+        commandExecutor.shutdown();
     }
 
     /**
-     * loads the configuration and makes a cold start.
+     * loads the configuration and makes a cold start in the background.
+     * @return
+     * Completes when the plc is running or the start failed.
      */
-    public synchronized void start() {
-        try {
-            plcService.reset(false);
-            plcService.load(false);
-            plcService.start(PlcStartKind.COLD, false);
-            communication.message("Start issued");
-        }
-        catch(Exception ex){
-            communication.error("Starting failed");
-        }
+    public CompletableFuture<CommandReport> start() {
+        return start(PlcStartKind.COLD);
+    }
 
+    /**
+     * Starts the program in the background.
+     * @param kind
+     * WARM and HOT need a loaded program, see PlcCommands.start.
+     * @return
+     * Completes when the plc is running or the start failed.
+     */
+    public CompletableFuture<CommandReport> start(PlcStartKind kind) {
+        return commands.start(kind).thenApply(report -> report(report, "Started", "Starting failed"));
     }
 
     /**
-     * stops the program on the plc and unloads the configuration
+     * stops the program on the plc and unloads the configuration in the background.
+     * @return
+     * Completes when the plc stopped or the stop failed.
      */
-    public synchronized void stop() {
-        try {
-            plcService.stop(false);
-            plcService.reset(false);
-            communication.message("Stop issued");
-        }
-        catch(Exception ex){
-
-            communication.error("Stopping failed");
-        }
+    public CompletableFuture<CommandReport> stop() {
+        return commands.stop(true).thenApply(report -> report(report, "Stopped", "Stopping failed"));
     }
 
     /**
-     * reboots the controller.
+     * reboots the controller in the background.
+     * On a connection the session is kept and the command waits until the plc is running again,
+     * which needs the connection to be established again automatically, see ConnectionManager.setAutoReconnect.
+     * On plain services the session ends with the reboot, so the login screen is shown when the restart was issued.
+     * @return
+     * Completes when the plc is running again, when the restart was issued on plain services, or when it failed.
      */
-    public synchronized void restart() {
-        try {
-            deviceControlService.restartDevice();
+    public CompletableFuture<CommandReport> restart() {
+        return commands.restartDevice(PlcCommands.DEFAULT_RESTART_TIMEOUT).thenApply(report -> {
+            if(survivesReboot || !report.isSuccessful())
+                return report(report, "Restarted", "Restarting failed");
             communication.message("Restart issued");
-            communication.backToLogin();
-        }
-        catch(Exception ex){
-            communication.error("Restarting failed");
-        }
+            Platform.runLater(communication::backToLogin);
+            return report;
+        });
     }
 
     /**
-     * starts the firmware update process.
+     * starts the firmware update process in the background and goes back to the login screen.
      * Does only work, when a new firmware is present in /opt/plcnext
+     * @return
+     * Completes when the update was started or starting it failed.
      */
-    public synchronized void startFWUpdate() {
-        try {
-            deviceControlService.startFirmwareUpdate(0);
-            communication.message("Started firmware update");
-            communication.backToLogin();
-        }
-        catch (Exception ex){
-            communication.error("Starting the firmware update failed");
-        }
+    public CompletableFuture<Void> startFWUpdate() {
+        return CompletableFuture.runAsync(() -> {
+                    try {
+                        deviceControlService.startFirmwareUpdate(0);
+                    }
+                    catch (Exception ex){
+                        throw new CompletionException(ex);
+                    }
+                }, commandExecutor)
+                .handle((x, ex) -> {
+                    if(ex != null){
+                        communication.error("Starting the firmware update failed");
+                        return null;
+                    }
+                    communication.message("Started firmware update");
+                    Platform.runLater(communication::backToLogin);
+                    return null;
+                });
+    }
+
+    //Shows the outcome to the user and logs the duration of each step
+    private CommandReport report(CommandReport report, String success, String failure){
+        communication.log(report.toString());
+        if(report.isSuccessful())
+            communication.message(success + " in " + report.getElapsedMillis() + " ms");
+        else
+            communication.error(failure + ", " + report.getError());
+        return report;
+    }
+
+    private static ExecutorService createCommandExecutor(){
+        return Executors.newSingleThreadExecutor(r -> {
+            var thread = new Thread(r, "plc-commands");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 }
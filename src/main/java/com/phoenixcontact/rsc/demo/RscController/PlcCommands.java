@@ -0,0 +1,210 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.ade.commonremoting.CommonRemotingException;
+import com.phoenixcontact.arp.device.iface.services.IDeviceControlService;
+import com.phoenixcontact.arp.plc.domain.services.IPlcManagerService2;
+import com.phoenixcontact.arp.plc.domain.services.PlcStartKind;
+import com.phoenixcontact.arp.plc.domain.services.PlcState;
+import com.phoenixcontact.rsc.demo.Helper.Action;
+import com.phoenixcontact.rsc.demo.Helper.CommandReport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+/**
+ * Runs the lifecycle commands of the plc in the background.
+ *
+ * A command is a sequence of steps. The service calls run on the executor, so they never block the caller.
+ * After the calls a command waits until the plc reached the target state, instead of completing when the calls returned.
+ * Every command completes with a CommandReport holding the duration of each step. It does not complete exceptionally,
+ * a failed step is reported by the report, so the commands of many controllers can be collected the same way.
+ */
+public class PlcCommands {
+
+    public static final long DEFAULT_TIMEOUT = 30_000;
+    //A reboot takes much longer than a start
+    public static final long DEFAULT_RESTART_TIMEOUT = 300_000;
+
+    private final String host;
+    private final IPlcManagerService2 plcService;
+    private final IDeviceControlService deviceControlService;
+    //null if the state can not be awaited
+    private final PlcStateMonitor monitor;
+    private final Executor executor;
+    private volatile long timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * @param connection
+     * @param executor
+     * Runs the service calls, which block until the controller answered.
+     * @throws CommonRemotingException
+     */
+    public PlcCommands(ControllerConnection connection, Executor executor) throws CommonRemotingException {
+        this(connection.getHost(), connection.getService(IPlcManagerService2.class), connection.getService(IDeviceControlService.class),
+                connection.getPlcStateMonitor(), executor);
+    }
+
+    /**
+     * @param monitor
+     * Used to await the target states. Without a monitor the commands complete when the calls returned.
+     */
+    PlcCommands(String host, IPlcManagerService2 plcService, IDeviceControlService deviceControlService, PlcStateMonitor monitor, Executor executor){
+        this.host = host;
+        this.plcService = plcService;
+        this.deviceControlService = deviceControlService;
+        this.monitor = monitor;
+        this.executor = executor;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @param timeoutMillis
+     * How long a command waits for the plc to reach the target state.
+     */
+    public void setTimeout(long timeoutMillis) {
+        this.timeout = timeoutMillis;
+    }
+
+    /**
+     * Starts the program.
+     * @param kind
+     * COLD resets the plc and loads the configuration first.
+     * WARM and HOT only start, so the program must be loaded, i.e. stopped with stop(false).
+     * @return
+     * Completes when the plc is running.
+     */
+    public CompletableFuture<CommandReport> start(PlcStartKind kind) {
+        return startSteps(new Pipeline(kind + " start"), kind).run();
+    }
+
+    /**
+     * Stops the program.
+     * @param unload
+     * Resets the plc afterwards, which unloads the configuration. A WARM or HOT start needs it to be loaded.
+     * @return
+     * Completes when the plc is not running anymore and was reset.
+     */
+    public CompletableFuture<CommandReport> stop(boolean unload) {
+        return stopSteps(new Pipeline(unload ? "Stop and reset" : "Stop"), unload).run();
+    }
+
+    /**
+     * Stops the program and starts it again.
+     * @param kind
+     * @return
+     * Completes when the plc is running again.
+     */
+    public CompletableFuture<CommandReport> restart(PlcStartKind kind) {
+        var pipeline = new Pipeline(kind + " restart");
+        return startSteps(stopSteps(pipeline, false), kind).run();
+    }
+
+    /**
+     * Reboots the controller. Can only confirm the reboot, if the connection is established again automatically,
+     * see ConnectionManager.setAutoReconnect.
+     * @param timeoutMillis
+     * How long to wait for the plc to run again, e.g. DEFAULT_RESTART_TIMEOUT.
+     * @return
+     * Completes when the controller went down and the plc is running again.
+     */
+    public CompletableFuture<CommandReport> restartDevice(long timeoutMillis) {
+        return new Pipeline("Restart device")
+                .call("restart device", deviceControlService::restartDevice)
+                .await("shutdown", state -> state == PlcStateMonitor.UNKNOWN, timeout)
+                .await("boot", PlcStateMonitor::isRunning, timeoutMillis)
+                .run();
+    }
+
+    private Pipeline startSteps(Pipeline pipeline, PlcStartKind kind) {
+        if(kind == PlcStartKind.COLD){
+            pipeline.call("reset", () -> plcService.reset(false))
+                    .call("load", () -> plcService.load(false));
+        }
+        return pipeline.call("start", () -> plcService.start(kind, false))
+                .await("await running", PlcStateMonitor::isRunning, timeout);
+    }
+
+    private Pipeline stopSteps(Pipeline pipeline, boolean unload) {
+        pipeline.call("stop", () -> plcService.stop(false))
+                .await("await stop", state -> state != PlcStateMonitor.UNKNOWN && !PlcStateMonitor.isRunning(state), timeout);
+        if(unload)
+            pipeline.call("reset", () -> plcService.reset(false));
+        return pipeline;
+    }
+
+    //The steps of one command, each step starts when the one before completed
+    private final class Pipeline {
+        private final String command;
+        private final List<CommandReport.Step> steps = new ArrayList<>();
+        private final long started = System.nanoTime();
+        private CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        //The step running, reported if it fails
+        private volatile String current;
+
+        Pipeline(String command){
+            this.command = command;
+        }
+
+        Pipeline call(String step, Action action){
+            chain = chain.thenRunAsync(() -> {
+                current = step;
+                var t0 = System.nanoTime();
+                if(monitor != null)
+                    monitor.expectChange();
+                try{
+                    action.run();
+                }
+                catch (Exception ex){
+                    throw new CompletionException(ex);
+                }
+                finally {
+                    addStep(step, t0);
+                }
+            }, executor);
+            return this;
+        }
+
+        Pipeline await(String step, Predicate<List<PlcState>> condition, long timeoutMillis){
+            if(monitor == null)
+                return this;
+            chain = chain.thenCompose(x -> {
+                current = step;
+                var t0 = System.nanoTime();
+                return monitor.awaitState(condition, timeoutMillis).whenComplete((state, ex) -> addStep(step, t0)).thenApply(state -> null);
+            });
+            return this;
+        }
+
+        CompletableFuture<CommandReport> run(){
+            return chain.handle((x, ex) -> {
+                String error = null;
+                if(ex != null){
+                    var cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    error = current + " failed: " + (cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+                }
+                synchronized (steps){
+                    return new CommandReport(host, command, steps, monitor != null ? monitor.getState() : null, error,
+                            (System.nanoTime() - started) / 1_000_000);
+                }
+            });
+        }
+
+        private void addStep(String step, long t0){
+            synchronized (steps){
+                steps.add(new CommandReport.Step(step, (System.nanoTime() - t0) / 1_000_000));
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.ade.commonremoting.CommonRemotingException;
+import com.phoenixcontact.arp.plc.domain.services.IPlcManagerService2;
+import com.phoenixcontact.arp.plc.domain.services.PlcState;
+import com.phoenixcontact.rsc.demo.Helper.Action;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * Watches the state of the plc and notifies the listeners about changes only.
+ *
+ * All consumers of a controller share the monitor of its connection, so the state is read by one thread,
+ * no matter how many listeners there are. The monitor only polls while it has listeners.
+ * Right after a command, see expectChange, and after each change it polls every FAST_PERIOD milliseconds.
+ * While the state is stable, the period doubles up to SLOW_PERIOD.
+ */
+public class PlcStateMonitor {
+
+    public static final long FAST_PERIOD = 20;
+    public static final long SLOW_PERIOD = 1000;
+    //How long to poll fast after a command or a change
+    public static final long FAST_DURATION = 3000;
+    //Published when the state could not be read
+    public static final List<PlcState> UNKNOWN = List.of(PlcState.NONE);
+
+    /**
+     * Is notified on the thread of the monitor, so it must not block.
+     */
+    public interface Listener {
+        /**
+         * @param previous
+         * The state before. Null if it was not known yet or if the listener is notified about the current state after it was added.
+         * @param current
+         * The flags of the state in the order returned by the plc, or UNKNOWN.
+         */
+        void stateChanged(List<PlcState> previous, List<PlcState> current);
+    }
+
+    private final IPlcManagerService2 plcService;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService poller;
+    private final ControllerConnection connection;
+    private final ControllerConnection.StateListener connectionListener = (c, previous, current) -> expectChange();
+    //null until the first poll
+    private volatile List<PlcState> state;
+    //guarded by this
+    private ScheduledFuture<?> next;
+    private long fastUntil;
+    private long period = FAST_PERIOD;
+    private boolean closed;
+
+    /**
+     * Created by the connection, use ControllerConnection.getPlcStateMonitor to share it.
+     * @param connection
+     * @throws CommonRemotingException
+     */
+    PlcStateMonitor(ControllerConnection connection) throws CommonRemotingException {
+        this.connection = connection;
+        this.plcService = connection.getService(IPlcManagerService2.class);
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "plc-state-" + connection.getHost());
+            thread.setDaemon(true);
+            return thread;
+        });
+        //the state changes on a reconnect, e.g. after a restart of the controller
+        connection.addStateListener(connectionListener);
+    }
+
+    /**
+     * @return
+     * The last state read, UNKNOWN if it could not be read or null before the first poll.
+     */
+    public List<PlcState> getState() {
+        return state;
+    }
+
+    /**
+     * @param state
+     * @return
+     * True if the first flag of the state is RUNNING.
+     */
+    public static boolean isRunning(List<PlcState> state) {
+        return state != null && !state.isEmpty() && state.get(0) == PlcState.RUNNING;
+    }
+
+    /**
+     * Adds the listener and starts polling, if it is the first one.
+     * When the state is already known, the listener is notified about it right away.
+     * @param listener
+     */
+    public synchronized void addListener(Listener listener) {
+        if(closed)
+            throw new IllegalStateException("The monitor is closed");
+        listeners.add(listener);
+        //on the thread of the monitor, so the listener is never called concurrently
+        poller.execute(() -> {
+            var current = state;
+            if(current != null)
+                ((Action) () -> listener.stateChanged(null, current)).silence().run();
+        });
+        expectChange();
+    }
+
+    /**
+     * Removes the listener. Polling stops with the last one.
+     * @param listener
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Polls at once and then fast for FAST_DURATION milliseconds.
+     * Called after commands, which change the state of the plc.
+     */
+    public synchronized void expectChange() {
+        if(closed || listeners.isEmpty())
+            return;
+        fastUntil = System.currentTimeMillis() + FAST_DURATION;
+        period = FAST_PERIOD;
+        //a poll in progress can not be cancelled, it schedules the next one with the fast period
+        if(next == null || next.cancel(false))
+            next = poller.schedule(this::poll, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits until the state of the plc matches the condition. Only states read after the call are considered,
+     * so a command can not be confirmed by the state from before it.
+     * @param condition
+     * Called on the thread of the monitor.
+     * @param timeoutMillis
+     * @return
+     * Completes with the matching state, or exceptionally with a TimeoutException.
+     */
+    public CompletableFuture<List<PlcState>> awaitState(Predicate<List<PlcState>> condition, long timeoutMillis) {
+        var result = new CompletableFuture<List<PlcState>>();
+        Listener listener = (previous, current) -> {
+            //the current state, which is passed on adding the listener, might be outdated
+            if(previous != null && condition.test(current))
+                result.complete(current);
+        };
+        try{
+            addListener(listener);
+            //read once now, because the listener is only notified about changes
+            poller.execute(() -> {
+                read();
+                var current = state;
+                if(condition.test(current))
+                    result.complete(current);
+            });
+            var timeout = poller.schedule(() -> result.completeExceptionally(
+                    new TimeoutException("The plc did not reach the state within " + timeoutMillis + " ms")),
+                    timeoutMillis, TimeUnit.MILLISECONDS);
+            result.whenComplete((x, ex) -> {
+                timeout.cancel(false);
+                removeListener(listener);
+            });
+        }
+        catch (Exception ex){
+            //closed
+            removeListener(listener);
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    /**
+     * Stops polling. Called by the connection when it is closed.
+     */
+    public synchronized void close() {
+        closed = true;
+        if(next != null)
+            next.cancel(false);
+        poller.shutdownNow();
+        connection.removeStateListener(connectionListener);
+    }
+
+    private void poll() {
+        scheduleNext(read());
+    }
+
+    //Reads the state and notifies the listeners if it changed. Only called on the thread of the monitor
+    private boolean read() {
+        List<PlcState> current;
+        try{
+            current = List.copyOf(plcService.getPlcState().getFlags());
+            if(current.isEmpty())
+                current = UNKNOWN;
+        }
+        catch (Exception ex){
+            current = UNKNOWN;
+        }
+        var previous = state;
+        var changed = !current.equals(previous);
+        state = current;
+        if(changed)
+            for(var listener : listeners){
+                var published = current;
+                ((Action) () -> listener.stateChanged(previous, published)).silence().run();
+            }
+        return changed;
+    }
+
+    private synchronized void scheduleNext(boolean changed) {
+        if(closed || listeners.isEmpty()){
+            next = null;
+            return;
+        }
+        var now = System.currentTimeMillis();
+        var failed = state == UNKNOWN;
+        //a change is often followed by another one, e.g. while the program is loaded
+        if(changed && !failed)
+            fastUntil = Math.max(fastUntil, now + FAST_DURATION);
+        if(failed)
+            period = SLOW_PERIOD;
+        else if(now < fastUntil)
+            period = FAST_PERIOD;
+        else
+            period = Math.min(SLOW_PERIOD, period * 2);
+        next = poller.schedule(this::poll, period, TimeUnit.MILLISECONDS);
+    }
+}
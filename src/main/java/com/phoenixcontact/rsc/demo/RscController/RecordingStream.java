@@ -0,0 +1,223 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.ade.commonremoting.CoreType;
+import com.phoenixcontact.ade.commonremoting.utils.AdeObject;
+import com.phoenixcontact.ade.commonremoting.utils.OutParam;
+import com.phoenixcontact.arp.plc.gds.services.*;
+import com.phoenixcontact.rsc.demo.Helper.Action;
+import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import com.phoenixcontact.rsc.demo.Helper.RecordedSample;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Lossless capture of variables with a recording subscription.
+ *
+ * Polling with readValues only sees the latest value of every refresh. A recording subscription
+ * buffers the values of every task cycle on the controller instead. This stream drains that buffer
+ * with readRecords in bulk and passes all samples of one drain to the consumer, ordered by time.
+ *
+ * The lifecycle looks as follows:
+ *
+ * 	subId = subService.createRecordingSubscription(kind, recordCount);
+ *  subService.addVariable(subId, uri) for every uri;
+ *  subService.subscribe(subId, sampleRate);
+ *  infos = subService.getRecordInfos(subId);
+ *  repeat
+ *  	records = subService.readRecords(subId, 0);
+ *  subService.unsubscribe(subId);
+ *  subService.deleteSubscription(subId);
+ */
+public class RecordingStream {
+
+    //readRecords returns all records available when called with 0
+    private static final short ALL_RECORDS = 0;
+
+    private final CoreCommunication communication;
+    private final ISubscriptionService subService;
+    private final ScheduledExecutorService updater;
+
+    private final List<String> uris;
+    private final SubscriptionKind kind;
+    private final short recordCount;
+    private final BigInteger sampleRate;
+    private final long drainIntervalMillis;
+    private final Consumer<List<RecordedSample>> consumer;
+
+    //The layout of a record as returned by getRecordInfos
+    private VariableInfo[] recordInfos;
+    private ScheduledFuture<?> draintask;
+    private long subId;
+
+    private final AtomicLong samples;
+    private final AtomicLong records;
+
+    /**
+     * @param uris
+     * The variables to record.
+     * @param kind
+     * The kind of the recording subscription.
+     * @param recordCount
+     * The number of records the controller buffers between two drains. If the buffer is full, the oldest records are lost.
+     * @param sampleRate
+     * The sample rate in microseconds. 0 records every task cycle.
+     * @param drainIntervalMillis
+     * The interval in which the buffer is read.
+     * @param consumer
+     * Receives the samples of every drain on the updater thread.
+     */
+    RecordingStream(Collection<String> uris, SubscriptionKind kind, short recordCount, BigInteger sampleRate, long drainIntervalMillis,
+                    Consumer<List<RecordedSample>> consumer,
+                    CoreCommunication communication, ISubscriptionService subService, ScheduledExecutorService updater){
+        this.uris = new ArrayList<>(uris);
+        this.kind = kind;
+        this.recordCount = recordCount;
+        this.sampleRate = sampleRate;
+        this.drainIntervalMillis = drainIntervalMillis;
+        this.consumer = consumer;
+        this.communication = communication;
+        this.subService = subService;
+        this.updater = updater;
+        subId = -1;
+        samples = new AtomicLong();
+        records = new AtomicLong();
+    }
+
+    /**
+     * Creates the recording subscription and starts draining it.
+     * @return
+     * True if the recording was started.
+     */
+    public synchronized boolean start(){
+        try{
+            if(subId != -1)
+                stop();
+
+            subId = subService.createRecordingSubscription(kind, recordCount);
+            for(var uri : uris){
+                var result = subService.addVariable(subId, uri);
+                if(result.getValue() != DataAccessError.NONE.getValue()){
+                    communication.error("Adding " + uri + " to the recording failed");
+                    stop();
+                    return false;
+                }
+            }
+
+            var outInfos = new OutParam<VariableInfo[]>();
+            var result = GdsServices.mergeResults(
+                    () -> subService.subscribe(subId, sampleRate),
+                    () -> subService.getRecordInfos(subId, outInfos));
+            if(result.getValue() != DataAccessError.NONE.getValue()){
+                communication.error("Starting the recording failed");
+                stop();
+                return false;
+            }
+            recordInfos = outInfos.getValue();
+
+            draintask = updater.scheduleAtFixedRate(this::drain, drainIntervalMillis, drainIntervalMillis, TimeUnit.MILLISECONDS);
+            communication.message("Started recording " + uris.size() + " variables");
+            return true;
+        }
+        catch(Exception ex){
+            communication.error("Starting the recording failed");
+            stop();
+            return false;
+        }
+    }
+
+    /**
+     * Stops draining and deletes the subscription on the controller. Samples still buffered there are lost.
+     */
+    public synchronized void stop(){
+        if(draintask != null)
+            draintask.cancel(false);
+        draintask = null;
+        if(subId != -1){
+            ((Action) () -> subService.unsubscribe(subId)).silence().run();
+            ((Action) () -> subService.deleteSubscription(subId)).silence().run();
+        }
+        subId = -1;
+    }
+
+    public synchronized boolean isRunning(){
+        return draintask != null;
+    }
+
+    /**
+     * @return
+     * The number of samples passed to the consumer so far.
+     */
+    public long getSampleCount(){
+        return samples.get();
+    }
+
+    /**
+     * @return
+     * The number of records read from the controller so far.
+     */
+    public long getRecordCount(){
+        return records.get();
+    }
+
+    //Reads all buffered records and hands them to the consumer
+    private synchronized void drain(){
+        try{
+            var outRecords = new OutParam<AdeObject[]>();
+            var result = subService.readRecords(subId, ALL_RECORDS, outRecords);
+            if(result.getValue() != DataAccessError.NONE.getValue()){
+                communication.error("Reading the recorded values failed");
+                return;
+            }
+
+            var recorded = outRecords.getValue();
+            if(recorded == null || recorded.length == 0)
+                return;
+
+            var batch = new ArrayList<RecordedSample>(recorded.length * uris.size());
+            for(var record : recorded)
+                unpack(record, batch);
+
+            records.addAndGet(recorded.length);
+            samples.addAndGet(batch.size());
+            consumer.accept(batch);
+        }
+        catch(Exception ex){
+            communication.error("Reading the recorded values failed");
+        }
+    }
+
+    /*
+     * A record is an array with one element per entry of the record infos.
+     * The values of every task context are preceded by the timestamp of the task cycle,
+     * which is delivered as DATETIME. All following values belong to this timestamp until the next one.
+     */
+    private void unpack(AdeObject record, List<RecordedSample> batch){
+        if(!(record.getValue() instanceof AdeObject[]))
+            return;
+
+        var values = (AdeObject[]) record.getValue();
+        var timestamp = 0L;
+        for(int i = 0; i < Math.min(values.length, recordInfos.length); i++){
+            var value = values[i];
+            if(value.getCoreType() == CoreType.DATETIME){
+                if(value.getValue() instanceof Number)
+                    timestamp = ((Number) value.getValue()).longValue();
+            }
+            else
+                batch.add(new RecordedSample(recordInfos[i].getName(), timestamp, value));
+        }
+    }
+}
@@ -0,0 +1,475 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.ade.commonremoting.CommonRemotingException;
+import com.phoenixcontact.arp.system.commons.services.io.IDirectoryService;
+import com.phoenixcontact.arp.system.commons.services.io.IFileService;
+import com.phoenixcontact.arp.system.rsc.ServiceManager;
+import com.phoenixcontact.rsc.demo.Helper.Action;
+import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import com.phoenixcontact.rsc.demo.Helper.IndexedFile;
+import com.phoenixcontact.rsc.demo.Helper.SyncMode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Crawls a folder on the plc in the background and keeps all files and folders below it in memory,
+ * so they can be found without expanding the tree.
+ *
+ * Up to concurrency folders are enumerated at the same time. The entries are sorted by path,
+ * so a prefix search only visits the matching range. Searches can run at any time, also while the index is refreshed.
+ * A refresh enumerates the folders again, but only reads the attributes of new files,
+ * so it costs one call per folder instead of one per file.
+ * An index built without attributes only holds names and paths, loadAttributes reads them for the files actually shown.
+ */
+public class RemoteFileIndex {
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+    //The attributes of the new files of a folder are read in tasks of this many files
+    private static final int ATTRIBUTE_BATCH = 64;
+
+    private final IFileService fileService;
+    private final IDirectoryService directoryService;
+    private final CoreCommunication communication;
+    private final String root;
+    private final int concurrency;
+    private final boolean withAttributes;
+
+    //All files and folders below the root, sorted by path
+    private final ConcurrentSkipListMap<String, IndexedFile> entries = new ConcurrentSkipListMap<>();
+    //The paths found in every crawled folder, to remove entries that disappeared when it is crawled again
+    private final ConcurrentHashMap<String, Set<String>> listings = new ConcurrentHashMap<>();
+
+    private final Object crawlLock = new Object();
+    private Crawl current;
+    private volatile long lastUpdate;
+
+    /**
+     * @param root
+     * The folder on the plc, which is indexed, e.g. /opt/plcnext.
+     * @param concurrency
+     * The maximum number of requests sent to the plc at the same time.
+     * @param withAttributes
+     * If true, the size and modification time of every file is read. Needs one request per new file.
+     */
+    public RemoteFileIndex(ServiceManager sm, CoreCommunication communication, String root, int concurrency, boolean withAttributes)
+            throws CommonRemotingException {
+        this(sm.getService(IFileService.class), sm.getService(IDirectoryService.class), communication, root, concurrency, withAttributes);
+    }
+
+    /**
+     * Uses the cached services of a connection, e.g. to index the same folder on many controllers.
+     * @see #RemoteFileIndex(ServiceManager, CoreCommunication, String, int, boolean)
+     */
+    public RemoteFileIndex(ControllerConnection connection, CoreCommunication communication, String root, int concurrency, boolean withAttributes)
+            throws CommonRemotingException {
+        this(connection.getService(IFileService.class), connection.getService(IDirectoryService.class), communication, root, concurrency, withAttributes);
+    }
+
+    RemoteFileIndex(IFileService fileService, IDirectoryService directoryService, CoreCommunication communication,
+                    String root, int concurrency, boolean withAttributes){
+        this.fileService = fileService;
+        this.directoryService = directoryService;
+        this.communication = communication;
+        this.root = normalize(root);
+        this.concurrency = Math.max(1, concurrency);
+        this.withAttributes = withAttributes;
+    }
+
+    public String getRoot() {
+        return root;
+    }
+
+    /**
+     * @return
+     * The number of files and folders in the index.
+     */
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+     * @return
+     * The time the last refresh finished in milliseconds since 1970 or 0 if the index was not built yet.
+     */
+    public long getLastUpdate(){
+        return lastUpdate;
+    }
+
+    public boolean isRunning(){
+        synchronized (crawlLock){
+            return current != null;
+        }
+    }
+
+    /**
+     * Crawls the whole root. The first call builds the index.
+     * @see #refresh(String, boolean)
+     */
+    public CompletableFuture<Void> refresh(){
+        return refresh(root, false);
+    }
+
+    /**
+     * Crawls the folder again and updates its entries in the index.
+     * New entries are added, removed ones are dropped and entries which still exist are kept.
+     * Returns the running refresh instead, if there is one.
+     * @param path
+     * A folder below the root, e.g. after files were uploaded into it.
+     * @param attributes
+     * If true, the attributes of files already in the index are read again as well.
+     * @return
+     * Completes when the folder is indexed. Is cancelled by cancel.
+     */
+    public CompletableFuture<Void> refresh(String path, boolean attributes){
+        Crawl crawl;
+        synchronized (crawlLock){
+            if(current != null)
+                return current.done;
+            crawl = new Crawl(attributes);
+            current = crawl;
+        }
+        var folder = normalize(path);
+        crawl.submit(folder, () -> crawl(crawl, folder));
+        return crawl.done;
+    }
+
+    /**
+     * Stops the running refresh. Entries found so far stay in the index.
+     */
+    public void cancel(){
+        Crawl crawl;
+        synchronized (crawlLock){
+            crawl = current;
+        }
+        if(crawl != null)
+            crawl.cancel();
+    }
+
+    /**
+     * Finds entries with a query typed by the user.
+     * Queries with *, ? or [ are globs, queries starting with / are path prefixes, all others are searched in the names.
+     * @param query
+     * @param limit
+     * The maximum number of results.
+     * @return
+     * The entries sorted by path.
+     */
+    public List<IndexedFile> search(String query, int limit){
+        if(query.indexOf('*') >= 0 || query.indexOf('?') >= 0 || query.indexOf('[') >= 0)
+            return findByGlob(query, limit);
+        if(query.startsWith("/"))
+            return findByPrefix(query, limit);
+        return findByName(query, limit);
+    }
+
+    /**
+     * @param prefix
+     * The beginning of the path, e.g. /opt/plcnext/config/
+     * @param limit
+     * @return
+     * The entries, whose path starts with the prefix, sorted by path.
+     */
+    public List<IndexedFile> findByPrefix(String prefix, int limit){
+        return collect(range(prefix), x -> true, limit);
+    }
+
+    /**
+     * @param text
+     * Is searched in the names of the entries, ignoring the case.
+     * @param limit
+     * @return
+     * The entries, whose name contains the text, sorted by path.
+     */
+    public List<IndexedFile> findByName(String text, int limit){
+        var lower = text.toLowerCase(Locale.ROOT);
+        return collect(entries.values(), x -> x.getLowerName().contains(lower), limit);
+    }
+
+    /**
+     * Finds entries with a glob. * and ? do not match a slash, ** does. [abc] and [!abc] match one of the characters.
+     * @param glob
+     * A glob containing a slash is matched against the full path, e.g. /opt/plcnext/**.log,
+     * otherwise against the name, e.g. *.config
+     * @param limit
+     * @return
+     * The matching entries sorted by path.
+     */
+    public List<IndexedFile> findByGlob(String glob, int limit){
+        var pattern = compileGlob(glob);
+        if(glob.indexOf('/') < 0)
+            return collect(entries.values(), x -> pattern.matcher(x.getName()).matches(), limit);
+        //Only the entries below the literal beginning of the glob can match
+        var literal = 0;
+        while(literal < glob.length() && "*?[".indexOf(glob.charAt(literal)) < 0)
+            literal++;
+        var candidates = glob.startsWith("/") ? range(glob.substring(0, literal)) : entries.values();
+        return collect(candidates, x -> pattern.matcher(x.getPath()).matches(), limit);
+    }
+
+    /**
+     * Reads the size and modification time of files, which are not known yet, e.g. for the results of a search
+     * in an index built without attributes. The entries in the index are updated as well.
+     * @param files
+     * @return
+     * The files with their attributes in the same order. Folders and files, whose attributes could not be read,
+     * are returned as they are.
+     */
+    public CompletableFuture<List<IndexedFile>> loadAttributes(List<IndexedFile> files){
+        var missing = new ArrayList<String>();
+        for(var file : files)
+            if(!file.isDirectory() && file.getSize() < 0)
+                missing.add(file.getPath());
+        if(missing.isEmpty())
+            return CompletableFuture.completedFuture(files);
+
+        var workers = Executors.newFixedThreadPool(Math.min(concurrency, missing.size()), r -> {
+            var thread = new Thread(r, "file-attributes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        var tasks = new ArrayList<CompletableFuture<Void>>();
+        for(var path : missing)
+            tasks.add(CompletableFuture.runAsync(() -> {
+                try{
+                    readAttributes(path);
+                }
+                catch (Exception ex){
+                    communication.log("Reading the attributes of " + path + " failed: " + ex.getMessage());
+                }
+            }, workers));
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).thenApply(x -> {
+            workers.shutdown();
+            var result = new ArrayList<IndexedFile>(files.size());
+            for(var file : files)
+                result.add(entries.getOrDefault(file.getPath(), file));
+            return result;
+        });
+    }
+
+    //Translates the glob into a regular expression
+    static Pattern compileGlob(String glob){
+        var sb = new StringBuilder();
+        for(var i = 0; i < glob.length(); i++){
+            var c = glob.charAt(i);
+            switch (c){
+                case '*':
+                    if(i + 1 < glob.length() && glob.charAt(i + 1) == '*'){
+                        sb.append(".*");
+                        i++;
+                    }
+                    else
+                        sb.append("[^/]*");
+                    break;
+                case '?':
+                    sb.append("[^/]");
+                    break;
+                case '[':
+                    var end = glob.indexOf(']', i + 2);
+                    if(end < 0){
+                        sb.append("\\[");
+                        break;
+                    }
+                    var body = glob.substring(i + 1, end);
+                    sb.append('[');
+                    if(body.startsWith("!")){
+                        sb.append('^');
+                        body = body.substring(1);
+                    }
+                    sb.append(body.replace("\\", "\\\\").replace("[", "\\[").replace("&", "\\&"));
+                    sb.append(']');
+                    i = end;
+                    break;
+                default:
+                    if("\\.^$|+(){}]".indexOf(c) >= 0)
+                        sb.append('\\');
+                    sb.append(c);
+            }
+        }
+        return Pattern.compile(sb.toString());
+    }
+
+    private Collection<IndexedFile> range(String prefix){
+        return entries.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+    }
+
+    private static List<IndexedFile> collect(Collection<IndexedFile> candidates, Predicate<IndexedFile> filter, int limit){
+        var result = new ArrayList<IndexedFile>();
+        for(var entry : candidates){
+            if(result.size() >= limit)
+                break;
+            if(filter.test(entry))
+                result.add(entry);
+        }
+        return result;
+    }
+
+    //Enumerates one folder, updates its entries and submits its subfolders
+    private void crawl(Crawl crawl, String folder) throws Exception {
+        var found = directoryService.enumerateFileSystemEntries(folder, "*", false);
+        crawl.folders.incrementAndGet();
+        var paths = new HashSet<String>();
+        var attributesToRead = new ArrayList<String>();
+        for(var entry : found){
+            var path = normalize(entry.getPath());
+            paths.add(path);
+            var known = entries.get(path);
+            //A file replaced by a folder or vice versa
+            if(known != null && known.isDirectory() != entry.isDirectory()){
+                removeTree(path);
+                known = null;
+            }
+            if(entry.isDirectory()){
+                if(known == null)
+                    entries.put(path, new IndexedFile(path, true, -1, -1));
+                crawl.submit(path, () -> crawl(crawl, path));
+            }
+            else {
+                crawl.files.incrementAndGet();
+                if(known == null)
+                    entries.put(path, new IndexedFile(path, false, -1, -1));
+                if(withAttributes && (known == null || crawl.attributes))
+                    attributesToRead.add(path);
+            }
+        }
+
+        var previous = listings.put(folder, paths);
+        if(previous != null)
+            for(var path : previous)
+                if(!paths.contains(path))
+                    removeTree(path);
+
+        for(var from = 0; from < attributesToRead.size(); from += ATTRIBUTE_BATCH){
+            var batch = attributesToRead.subList(from, Math.min(attributesToRead.size(), from + ATTRIBUTE_BATCH));
+            crawl.submit(folder, () -> readAttributes(crawl, batch));
+        }
+    }
+
+    private void readAttributes(Crawl crawl, List<String> paths) throws Exception {
+        for(var path : paths){
+            if(crawl.cancelled.get())
+                return;
+            readAttributes(path);
+        }
+    }
+
+    private void readAttributes(String path) throws Exception {
+        var attributes = FileAttributes.read(fileService, path, SyncMode.ALL);
+        if(attributes != null)
+            entries.computeIfPresent(path, (key, old) -> old.isDirectory() ? old :
+                    new IndexedFile(key, false, attributes.getSize(), attributes.getModifiedMillis()));
+    }
+
+    //Removes the entry and everything below it
+    private void removeTree(String path){
+        entries.remove(path);
+        var prefix = path + "/";
+        range(prefix).clear();
+        listings.remove(path);
+        listings.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    //Paths are stored without trailing slash, except the root
+    private static String normalize(String path){
+        var end = path.length();
+        while(end > 1 && path.charAt(end - 1) == '/')
+            end--;
+        return path.substring(0, end);
+    }
+
+    //One run over a folder tree. Finishes when no task is left
+    private final class Crawl {
+        private final boolean attributes;
+        private final ExecutorService workers;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger folders = new AtomicInteger();
+        private final AtomicInteger files = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final long started = System.currentTimeMillis();
+
+        private Crawl(boolean attributes){
+            this.attributes = attributes;
+            this.workers = Executors.newFixedThreadPool(concurrency, r -> {
+                var thread = new Thread(r, "file-indexer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        private void submit(String path, Action task){
+            pending.incrementAndGet();
+            try{
+                workers.execute(() -> {
+                    try{
+                        if(!cancelled.get())
+                            task.run();
+                    }
+                    catch (Exception ex){
+                        failures.incrementAndGet();
+                        communication.log("Indexing " + path + " failed: " + ex.getMessage());
+                    }
+                    finally {
+                        if(pending.decrementAndGet() == 0)
+                            finish();
+                    }
+                });
+            }
+            catch (RejectedExecutionException ex){
+                //cancelled meanwhile
+                if(pending.decrementAndGet() == 0)
+                    finish();
+            }
+        }
+
+        private void cancel(){
+            cancelled.set(true);
+            workers.shutdownNow();
+            finish();
+        }
+
+        private void finish(){
+            if(!finished.compareAndSet(false, true))
+                return;
+            workers.shutdown();
+            synchronized (crawlLock){
+                if(current == this)
+                    current = null;
+            }
+            if(cancelled.get()){
+                communication.message("Indexing " + root + " cancelled");
+                done.cancel(false);
+                return;
+            }
+            lastUpdate = System.currentTimeMillis();
+            var sb = new StringBuilder();
+            sb.append("Indexed ").append(files.get()).append(" files in ").append(folders.get()).append(" folders of ")
+                    .append(root).append(" in ").append(lastUpdate - started).append(" ms");
+            if(failures.get() > 0)
+                sb.append(", ").append(failures.get()).append(" failed");
+            communication.message(sb.toString());
+            done.complete(null);
+        }
+    }
+}
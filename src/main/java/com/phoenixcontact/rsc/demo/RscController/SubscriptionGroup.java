@@ -0,0 +1,481 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.ade.commonremoting.utils.AdeObject;
+import com.phoenixcontact.ade.commonremoting.utils.OutParam;
+import com.phoenixcontact.arp.plc.gds.services.*;
+import com.phoenixcontact.rsc.demo.Helper.*;
+import javafx.collections.ObservableList;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One subscription of the GdsServices with its own subscription kind and sample interval.
+ * Each group holds its own subscription id and is read at its own cadence, e.g. a fast group
+ * for motion values and a slow one for diagnostics.
+ */
+public class SubscriptionGroup {
+
+    private final String name;
+    private final SubscriptionKind kind;
+    private final long intervalMillis;
+    //The sample rate passed to the subscription service in microseconds
+    private final BigInteger sampleRate;
+
+    private final CoreCommunication communication;
+    private final ISubscriptionService subService;
+    private final IDataAccessService dataService;
+
+    //shared with the other groups of the GdsServices
+    private final ObservableList<SubscriptionView> gdsSubs;
+    private final FxBatchPublisher<SubscriptionView> tablePublisher;
+    private final ScheduledExecutorService updater;
+    //changes of gdsSubs are done by this executor, normally Platform::runLater
+    private final Executor uiExecutor;
+
+    //maps every subscribed uri to its view and its position in the results of the subscription service
+    private final SubscriptionRegistry registry;
+    private ScheduledFuture<?> updatetask;
+
+    /*
+     * The values of the last refresh. Replaced by the update thread after every successful read.
+     * The update thread never takes the lock of this group, so changing the subscription
+     * and reading the values do not block each other.
+     */
+    private final AtomicReference<ValueSnapshot> snapshot;
+
+    //Only used by the update thread, reused on every refresh to keep the allocations per tick low.
+    //The store is only replaced when the layout changed.
+    //A run of a cancelled update task can still be in flight when the next one is scheduled,
+    //so they are guarded by updating. The group lock is not used for this.
+    private final ReentrantLock updating = new ReentrantLock();
+    private ValueStore store;
+    private SubscriptionLayout storeLayout;
+    private final OutParam<AdeObject[]> outValues;
+    private final ArrayList<SubscriptionView> changed;
+
+    /*
+     * The id of the current subscription. -1 if no subscription is held.
+     *
+     * Notes on the Subscription Service Interface:
+     * The lifecycle for a subscription looks as follows:
+     *
+     * 	subId = subService.createSubscription(kind);
+     *  subService.add(subId, "uri of variable1");
+     *  subservice.subscribe(subId, sampleRate);
+     *  repeat
+     *  	//unsubscribe necessary to add new variable
+     *  	subService.unsubscribe(subId);
+     *  	//change subscription
+     *  	subService.add(subId, "uri of variable2");
+     *  	or subService.remove(subId, "uri of varibable2");
+     *  	//resubscribe again. Subscribing does not return an error, but will fail silently
+     *  	subService.resubscribe(subId, sampleRate);
+     *  subService.unsubscribe(subId);
+     *  subService.deleteSubscription(subId);
+     *  subId = -1;
+     *
+     */
+    private volatile long subId;
+
+    SubscriptionGroup(String name, SubscriptionKind kind, long intervalMillis,
+                      CoreCommunication communication, ISubscriptionService subService, IDataAccessService dataService,
+                      ObservableList<SubscriptionView> gdsSubs, FxBatchPublisher<SubscriptionView> tablePublisher,
+                      ScheduledExecutorService updater, Executor uiExecutor) {
+        this.name = name;
+        this.kind = kind;
+        this.intervalMillis = intervalMillis;
+        this.sampleRate = BigInteger.valueOf(intervalMillis * 1000);
+        this.communication = communication;
+        this.subService = subService;
+        this.dataService = dataService;
+        this.gdsSubs = gdsSubs;
+        this.tablePublisher = tablePublisher;
+        this.updater = updater;
+        this.uiExecutor = uiExecutor;
+        registry = new SubscriptionRegistry();
+        snapshot = new AtomicReference<>(ValueSnapshot.EMPTY);
+        store = new ValueStore(0);
+        storeLayout = SubscriptionLayout.EMPTY;
+        outValues = new OutParam<>();
+        changed = new ArrayList<>();
+        subId = -1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SubscriptionKind getKind() {
+        return kind;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public boolean contains(String uri){
+        return registry.contains(uri);
+    }
+
+    public SubscriptionView get(String uri){
+        return registry.get(uri);
+    }
+
+    public boolean isEmpty(){
+        return registry.isEmpty();
+    }
+
+    /**
+     * The values of the last refresh. Does not block, not even while the subscription is changed.
+     * @return
+     */
+    public ValueSnapshot getSnapshot(){
+        return snapshot.get();
+    }
+
+    /**
+     * Creates the subscription on the controller, replacing an existing one.
+     */
+    public synchronized void newSubscription(){
+        try {
+            if(subId != -1)
+                subService.deleteSubscription(subId);
+            subId = subService.createSubscription(kind);
+            registry.invalidate();
+
+        }catch (Exception ex){
+            communication.error("Creating the subscription " + name + " failed");
+        }
+    }
+
+    /**
+     * Deletes the subscription on the controller and removes all its views from the table.
+     */
+    public synchronized void removeAllSubscriptions(){
+        try{
+            stopUpdates();
+            subService.unsubscribe(subId);
+            subService.deleteSubscription(subId);
+            subId = -1;
+        }
+        catch(Exception ex){
+            communication.error("Deleting the subscriptions of " + name + " failed");
+        }
+        finally {
+            var views = registry.getViews();
+            registry.clear();
+            snapshot.set(ValueSnapshot.EMPTY);
+            uiExecutor.execute(() -> gdsSubs.removeAll(views));
+        }
+    }
+
+    public synchronized void clean() {
+        stopUpdates();
+        ((Action) () -> subService.unsubscribe(subId)).silence().run();
+        ((Action) () -> subService.deleteSubscription(subId)).silence().run();
+    }
+
+    //Applies all changes of the variable set in one unsubscribe/resubscribe window and returns the result per uri
+    synchronized Map<String, DataAccessError> changeVariables(Collection<String> add, Collection<String> remove) throws Exception {
+        var results = new LinkedHashMap<String, DataAccessError>();
+
+        //Only read uris that are new. Known ones count as success, unknown removals as NOT_EXISTS.
+        var newUris = new ArrayList<String>();
+        for(var uri : add){
+            if(registry.contains(uri))
+                results.put(uri, DataAccessError.NONE);
+            else if(!results.containsKey(uri)){
+                results.put(uri, DataAccessError.NONE);
+                newUris.add(uri);
+            }
+        }
+        var removeUris = new ArrayList<String>();
+        for(var uri : remove){
+            if(registry.contains(uri) && !results.containsKey(uri))
+                removeUris.add(uri);
+            results.putIfAbsent(uri, DataAccessError.NOT_EXISTS);
+        }
+
+        //Read all new uris for the first time with a single call. This validates them and supplies the initial values.
+        var newViews = new ArrayList<SubscriptionView>();
+        if(!newUris.isEmpty()){
+            var items = dataService.read(newUris.toArray(new String[0]));
+            for(int i = 0; i < newUris.size(); i++){
+                var uri = newUris.get(i);
+                var item = i < items.length ? items[i] : null;
+                if(item == null)
+                    results.put(uri, DataAccessError.NOT_EXISTS);
+                else if(item.getError().getValue() != DataAccessError.NONE.getValue())
+                    results.put(uri, item.getError());
+                else
+                    newViews.add(new SubscriptionView(uri, item.getValue()));
+            }
+        }
+
+        if(newViews.isEmpty() && removeUris.isEmpty())
+            return results;
+
+        //The update thread discards everything it reads until the change is complete
+        registry.beginChange();
+        try{
+            //unsubscribe is only necessary while variables are subscribed
+            var wasSubscribed = !registry.isEmpty();
+            if(wasSubscribed){
+                var result = subService.unsubscribe(subId);
+                if(result.getValue() != DataAccessError.NONE.getValue()){
+                    for(var uri : removeUris)
+                        results.put(uri, result);
+                    for(var view : newViews)
+                        results.put(view.getUri(), result);
+                    return results;
+                }
+            }
+
+            var removedUris = new ArrayList<String>();
+            var removedViews = new ArrayList<SubscriptionView>();
+            for(var uri : removeUris){
+                var result = subService.removeVariable(subId, uri);
+                //NOT_EXISTS means the variable is already gone, which is what we want
+                if(result.getValue() == DataAccessError.NONE.getValue()
+                        || result.getValue() == DataAccessError.NOT_EXISTS.getValue()){
+                    results.put(uri, DataAccessError.NONE);
+                    removedUris.add(uri);
+                    removedViews.add(registry.get(uri));
+                }
+                else
+                    results.put(uri, result);
+            }
+            registry.removeAll(removedUris);
+
+            var addedViews = new ArrayList<SubscriptionView>();
+            for(var view : newViews){
+                var result = subService.addVariable(subId, view.getUri());
+                results.put(view.getUri(), result);
+                if(result.getValue() == DataAccessError.NONE.getValue())
+                    addedViews.add(view);
+            }
+            registry.addAll(addedViews);
+
+            if(!registry.isEmpty()){
+                var result = wasSubscribed
+                        ? subService.resubscribe(subId, sampleRate)
+                        : subService.subscribe(subId, sampleRate);
+                if(result.getValue() != DataAccessError.NONE.getValue()){
+                    communication.error("Subscribing the changed variables of " + name + " failed");
+                    //Roll the new variables back, otherwise the table shows rows that are never updated
+                    var addedUris = new ArrayList<String>();
+                    for(var view : addedViews){
+                        results.put(view.getUri(), result);
+                        addedUris.add(view.getUri());
+                        ((Action) () -> subService.removeVariable(subId, view.getUri())).silence().run();
+                    }
+                    registry.removeAll(addedUris);
+                    addedViews.clear();
+                    //Try to get the variables from before back
+                    if(!registry.isEmpty()){
+                        ((Action) () -> {
+                            if(wasSubscribed)
+                                subService.resubscribe(subId, sampleRate);
+                            else
+                                subService.subscribe(subId, sampleRate);
+                        }).silence().run();
+                    }
+                }
+            }
+
+            //Update the table with one change per direction
+            uiExecutor.execute(() -> {
+                gdsSubs.removeAll(removedViews);
+                gdsSubs.addAll(addedViews);
+            });
+
+            if(registry.isEmpty()){
+                stopUpdates();
+                snapshot.set(ValueSnapshot.EMPTY);
+            }
+            else
+                startUpdates();
+
+            return results;
+        }
+        finally {
+            registry.endChange();
+        }
+    }
+
+    /**
+     * Sets a deadband for a subscribed R4 or R8 variable.
+     * @param uri
+     * @param deadband
+     * @return
+     * False if the uri is not part of this group
+     */
+    public boolean setDeadband(String uri, double deadband){
+        var view = registry.get(uri);
+        if(view != null)
+            view.setDeadband(deadband);
+        return view != null;
+    }
+
+    /**
+     * Stops reading the values, e.g. while the connection is lost. The variables stay in the group and in the table.
+     */
+    public synchronized void pause(){
+        stopUpdates();
+    }
+
+    /**
+     * Creates the subscription again with all variables of the group and resumes the updates,
+     * e.g. after the connection was established again. The subscription of the lost session is gone with it.
+     * All variables are added before the single subscribe call.
+     * @return
+     * The uris which could not be subscribed again. They are removed from the group and the table.
+     * @throws Exception
+     * If the subscription could not be created. The group stays paused then.
+     */
+    synchronized List<String> restore() throws Exception {
+        stopUpdates();
+        var failed = new ArrayList<String>();
+        registry.beginChange();
+        try{
+            subId = subService.createSubscription(kind);
+            var failedViews = new ArrayList<SubscriptionView>();
+            for(var view : registry.getViews()){
+                var result = subService.addVariable(subId, view.getUri());
+                if(result.getValue() != DataAccessError.NONE.getValue()){
+                    failed.add(view.getUri());
+                    failedViews.add(view);
+                }
+            }
+            registry.removeAll(failed);
+            if(!failedViews.isEmpty())
+                uiExecutor.execute(() -> gdsSubs.removeAll(failedViews));
+
+            if(registry.isEmpty()){
+                snapshot.set(ValueSnapshot.EMPTY);
+                return failed;
+            }
+            var result = subService.subscribe(subId, sampleRate);
+            if(result.getValue() != DataAccessError.NONE.getValue())
+                throw new IllegalStateException("Subscribing " + name + " failed with " + result);
+            startUpdates();
+            return failed;
+        }
+        finally {
+            registry.endChange();
+        }
+    }
+
+    private void startUpdates(){
+        if(updatetask == null || updatetask.isCancelled()){
+            //Every group is read at its own cadence
+            updatetask = updater.scheduleAtFixedRate(this::updateSubs, Math.min(50, intervalMillis), intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopUpdates(){
+        if(updatetask != null && !updatetask.isCancelled())
+            updatetask.cancel(false);
+    }
+
+    /*
+     * Periodically reads the Values of the subscriptions and updates the view.
+     * Runs without the lock of the group. Instead the generation of the registry is read before and
+     * checked after the calls to the subscription service. If the subscription was changed in between,
+     * the result is discarded.
+     * Package private for the benchmarks. A call while another one is still running returns at once.
+     */
+    void updateSubs() {
+        //The run of a cancelled task is still busy, the next tick reads the values
+        if(!updating.tryLock())
+            return;
+        try{
+            var generation = registry.getGeneration();
+            if(generation % 2 != 0)
+                return;
+
+            //The variable infos are only needed again, when the set of variables changed
+            var layout = registry.getLayout();
+            if(layout.getGeneration() != generation){
+                layout = updateLayout(generation);
+                if(layout == null)
+                    return;
+            }
+
+            var result = subService.readValues(subId, outValues);
+
+            if (DataAccessError.NONE.equals(result) && registry.getGeneration() == generation) {
+                var values = outValues.getValue();
+                if(values.length != layout.getSlotCount()){
+                    //The subscription changed in the meantime, read the infos again next time
+                    registry.discardLayout(layout);
+                    return;
+                }
+
+                snapshot.set(new ValueSnapshot(layout, values, System.currentTimeMillis()));
+
+                //The store has one slot per variable. When the layout changed, a new one is filled before
+                //the views are bound to it, the ui might still read the old one.
+                var slots = layout.getSlots();
+                var newLayout = storeLayout != layout;
+                if(newLayout)
+                    store = new ValueStore(slots.length);
+
+                //The values are in the same order as the slots, so every view is found by position.
+                //They are copied into the primitive columns, the AdeObjects are not kept.
+                changed.clear();
+                for (int i = 0; i < values.length; i++) {
+                    var view = slots[i];
+                    //Most variables are stable between two refreshes, only changed ones are sent to the ui
+                    if(view != null && (store.store(i, values[i], view.getDeadband()) || newLayout))
+                        changed.add(view);
+                }
+                if(newLayout){
+                    for(int i = 0; i < slots.length; i++)
+                        if(slots[i] != null)
+                            slots[i].bind(store, i);
+                    storeLayout = layout;
+                }
+                //All views of this refresh are shown in one pulse. If the ui is still busy with the
+                //last refresh, they are merged into it and only the newest values are displayed.
+                tablePublisher.submit(changed);
+                changed.clear();
+            }
+        }
+        catch (Exception ex){
+            communication.error("Update failed");
+        }
+        finally {
+            updating.unlock();
+        }
+    }
+
+    //Reads the order of the variables in the subscription and assigns the slots of the registry
+    private SubscriptionLayout updateLayout(long generation) throws Exception {
+        var outInfos = new OutParam<VariableInfo[]>();
+        var result = subService.getVariableInfos(subId, outInfos);
+        if(!DataAccessError.NONE.equals(result))
+            return null;
+
+        var layout = registry.layout(outInfos.getValue(), generation);
+        if(layout != null && layout.getUnknownCount() > 0)
+            communication.error("No such uri in subscription list");
+        return layout;
+    }
+}
@@ -0,0 +1,257 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.rsc.demo.Helper.Action;
+import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import com.phoenixcontact.rsc.demo.Helper.TransferProgress;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Base of the transfers between the host and the controller.
+ *
+ * A job runs once. The subclass walks the files to transfer in execute and passes every file
+ * to submit, which runs it on a bounded pool of workers. The job keeps track of the transferred
+ * files and bytes, reports the progress and can be cancelled from any thread.
+ */
+public abstract class TransferJob {
+
+    //the minimum time between two progress reports
+    private static final long REPORT_INTERVAL_MILLIS = 500;
+
+    protected final CoreCommunication communication;
+    private final int concurrency;
+    private final Consumer<TransferProgress> progressListener;
+
+    private final AtomicInteger filesTotal;
+    private final AtomicInteger filesDone;
+    private final AtomicInteger filesFailed;
+    private final AtomicInteger filesSkipped;
+    private final AtomicLong bytesTotal;
+    private final AtomicLong bytesDone;
+    private final AtomicLong lastReport;
+    private volatile long startNanos;
+    private volatile boolean cancelled;
+
+    private ExecutorService workers;
+    private final List<Future<?>> pending;
+
+    /**
+     * @param communication
+     * @param concurrency
+     * The maximum number of files transferred at the same time.
+     * @param progressListener
+     * Receives the progress from the worker threads. May be null.
+     */
+    protected TransferJob(CoreCommunication communication, int concurrency, Consumer<TransferProgress> progressListener){
+        this.communication = communication;
+        this.concurrency = Math.max(1, concurrency);
+        this.progressListener = progressListener;
+        filesTotal = new AtomicInteger();
+        filesDone = new AtomicInteger();
+        filesFailed = new AtomicInteger();
+        filesSkipped = new AtomicInteger();
+        bytesTotal = new AtomicLong();
+        bytesDone = new AtomicLong();
+        lastReport = new AtomicLong();
+        pending = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    /**
+     * Runs the transfer on the calling thread and returns when all files are done or the job was cancelled.
+     * @return
+     * True if all files were transferred.
+     */
+    public final boolean run(){
+        startNanos = System.nanoTime();
+        var counter = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(concurrency, r -> {
+            var thread = new Thread(r, "transfer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try{
+            execute();
+            //execute has returned, so no futures are added anymore
+            for(var future : pending){
+                if(cancelled)
+                    break;
+                future.get();
+            }
+        }
+        catch(CancellationException ex){
+            //reported below
+        }
+        catch(Exception ex){
+            communication.error(getClass().getSimpleName() + " failed");
+            cancelled = true;
+        }
+        finally {
+            workers.shutdownNow();
+        }
+
+        var progress = getProgress(true);
+        if(progressListener != null)
+            progressListener.accept(progress);
+        if(cancelled)
+            communication.error("Transfer cancelled after " + progress);
+        else if(progress.getFilesFailed() > 0)
+            communication.error("Transfer finished with errors: " + progress);
+        else
+            communication.message("Transfer finished: " + progress);
+        return !cancelled && progress.getFilesFailed() == 0;
+    }
+
+    /**
+     * Walks the files to transfer and passes them to submit. Called once by run.
+     * @throws Exception
+     * Stops the whole job.
+     */
+    protected abstract void execute() throws Exception;
+
+    /**
+     * Stops the job. Running transfers are interrupted, files not started yet are skipped.
+     */
+    public void cancel(){
+        cancelled = true;
+        synchronized (pending){
+            for(var future : pending)
+                future.cancel(true);
+        }
+    }
+
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    public TransferProgress getProgress(){
+        return getProgress(false);
+    }
+
+    private TransferProgress getProgress(boolean finished){
+        var elapsed = startNanos == 0 ? 0 : (System.nanoTime() - startNanos) / 1_000_000;
+        return new TransferProgress(filesDone.get(), filesTotal.get(), filesFailed.get(), filesSkipped.get(),
+                bytesDone.get(), bytesTotal.get(), elapsed, finished);
+    }
+
+    //Runs the transfer of one file on the workers. Exceptions count as failure of this file.
+    protected void submit(String path, Action transfer){
+        if(cancelled)
+            return;
+        var future = workers.submit(() -> {
+            if(cancelled)
+                return;
+            try{
+                transfer.run();
+            }
+            catch(Exception ex){
+                if(!cancelled)
+                    failed(path, ex.getMessage());
+            }
+        });
+        pending.add(future);
+        //cancel might have missed the future
+        if(cancelled)
+            future.cancel(true);
+    }
+
+    //Waits for the files submitted so far, e.g. before cleaning up next to them. Called by execute.
+    protected void awaitSubmitted() throws Exception {
+        List<Future<?>> submitted;
+        synchronized (pending){
+            submitted = new ArrayList<>(pending);
+        }
+        for(var future : submitted){
+            checkCancelled();
+            future.get();
+        }
+    }
+
+    //Adds files found by execute to the totals
+    protected void addTotal(int files, long bytes){
+        filesTotal.addAndGet(files);
+        bytesTotal.addAndGet(bytes);
+    }
+
+    protected void addBytes(long bytes){
+        bytesDone.addAndGet(bytes);
+    }
+
+    protected void done(){
+        filesDone.incrementAndGet();
+        report();
+    }
+
+    //An unchanged file counts as done without transferring it
+    protected void skipped(){
+        filesSkipped.incrementAndGet();
+        done();
+    }
+
+    //A single failed file does not stop the job, it is only logged
+    protected void failed(String path, Object reason){
+        filesFailed.incrementAndGet();
+        communication.log("Transferring " + path + " failed: " + reason);
+        report();
+    }
+
+    //Throws if the job was cancelled, used to stop long running steps
+    protected void checkCancelled(){
+        if(cancelled)
+            throw new CancellationException();
+    }
+
+    //Counts the bytes read from the stream and stops reading when the job is cancelled
+    protected InputStream counting(InputStream in){
+        return new FilterInputStream(in){
+            @Override
+            public int read() throws IOException {
+                check();
+                var b = super.read();
+                if(b >= 0)
+                    addBytes(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                check();
+                var count = super.read(buffer, offset, length);
+                if(count > 0)
+                    addBytes(count);
+                return count;
+            }
+
+            private void check() throws IOException {
+                if(cancelled)
+                    throw new IOException("Transfer cancelled");
+            }
+        };
+    }
+
+    //Reports at most every REPORT_INTERVAL_MILLIS
+    private void report(){
+        if(progressListener == null)
+            return;
+        var now = System.currentTimeMillis();
+        var last = lastReport.get();
+        if(now - last >= REPORT_INTERVAL_MILLIS && lastReport.compareAndSet(last, now))
+            progressListener.accept(getProgress(false));
+    }
+}
@@ -0,0 +1,216 @@
+//  
+// Copyright (c) Phoenix Contact GmbH & Co. KG. All rights reserved.  
+// Licensed under the MIT. See LICENSE file in the project root for full license information.
+// SPDX-License-Identifier:     MIT
+// 
+package com.phoenixcontact.rsc.demo.RscController;
+
+import com.phoenixcontact.arp.system.commons.services.io.*;
+import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import com.phoenixcontact.rsc.demo.Helper.SyncMode;
+import com.phoenixcontact.rsc.demo.Helper.TransferProgress;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Uploads a local directory tree to the controller.
+ *
+ * The tree is walked once. Directories are created one after another in the order they were visited,
+ * so every parent exists before its children. As soon as a directory exists, its files are handed to
+ * the workers, so the creation of the remaining directories overlaps with the writes.
+ *
+ * Every file is written to a temporary path and moved to its name afterwards, see AtomicTransfer.
+ * In sync mode every worker first compares the attributes of the remote file and skips unchanged ones.
+ */
+public class UploadJob extends TransferJob {
+
+    private final IFileService fileService;
+    private final IDirectoryService directoryService;
+    private final Path source;
+    private final String target;
+    private final boolean createTarget;
+    private final boolean overwrite;
+    private final SyncMode mode;
+    private final boolean deleteExtras;
+    private final AtomicTransfer transfer;
+    private final int bufferSize;
+
+    /**
+     * @param source
+     * The local directory to upload.
+     * @param target
+     * The remote path the content of source is uploaded to.
+     * @param createTarget
+     * True if the target directory does not exist yet.
+     * @param overwrite
+     * Passed to every write. Changed files are always overwritten in sync mode.
+     * @param mode
+     * Which files are written.
+     * @param deleteExtras
+     * If true, remote files and folders below target, which do not exist in source, are deleted.
+     * @param bufferSize
+     * The size of the buffer used to read files too small to be mapped.
+     */
+    UploadJob(IFileService fileService, IDirectoryService directoryService, CoreCommunication communication,
+              Path source, String target, boolean createTarget, boolean overwrite, SyncMode mode, boolean deleteExtras,
+              int concurrency, int bufferSize, Consumer<TransferProgress> progressListener){
+        super(communication, concurrency, progressListener);
+        this.fileService = fileService;
+        this.directoryService = directoryService;
+        this.source = source;
+        this.target = target;
+        this.createTarget = createTarget;
+        this.overwrite = overwrite;
+        this.mode = mode;
+        this.deleteExtras = deleteExtras;
+        this.bufferSize = bufferSize;
+        transfer = new AtomicTransfer(fileService, bufferSize);
+    }
+
+    @Override
+    protected void execute() throws Exception {
+        //The walk visits every directory before its content, which is the order they have to be created in
+        var directories = new ArrayList<Path>();
+        var filesByDirectory = new HashMap<Path, List<Path>>();
+        walk(directories, filesByDirectory);
+        //the remote paths of everything in source, all others are extras
+        var expected = new HashSet<String>();
+
+        for(var directory : directories){
+            checkCancelled();
+            var remote = toRemotePath(directory);
+            var files = filesByDirectory.getOrDefault(directory, List.of());
+            expected.add(remote);
+
+            if((!directory.equals(source) || createTarget) && !create(remote)){
+                for(var file : files)
+                    failed(file.toString(), "Creating the folder " + remote + " failed");
+                continue;
+            }
+
+            for(var file : files){
+                var remoteFile = remote + "/" + file.getFileName();
+                expected.add(remoteFile);
+                submit(file.toString(), () -> write(file, remoteFile));
+            }
+        }
+
+        //After the writes, so the enumeration does not run into the temporary files of running uploads
+        if(deleteExtras){
+            awaitSubmitted();
+            deleteExtras(expected);
+        }
+    }
+
+    //Deletes all remote entries below target, which are not expected
+    private void deleteExtras(Set<String> expected) throws Exception {
+        var entries = directoryService.enumerateFileSystemEntries(target, "*", true);
+        //Sorted, a folder comes before its content, which is deleted with the folder
+        var paths = new TreeMap<String, FileSystemEntry>();
+        for(var entry : entries)
+            paths.put(entry.getPath(), entry);
+
+        var deleted = 0;
+        //Not only the last one, /a/b-old is sorted between /a/b and /a/b/c
+        var deletedFolders = new HashSet<String>();
+        for(var entry : paths.values()){
+            checkCancelled();
+            var path = entry.getPath();
+            if(expected.contains(path) || AtomicTransfer.isTemporary(path) || isBelow(path, deletedFolders))
+                continue;
+            var result = entry.isDirectory() ? directoryService.delete(path) : fileService.delete(path);
+            if(result.getValue() == FileSystemError.NONE.getValue()){
+                deleted++;
+                if(entry.isDirectory())
+                    deletedFolders.add(path);
+            }
+            else
+                communication.log("Deleting the extra " + path + " failed: " + result);
+        }
+        communication.log("Deleted " + deleted + " extra files and folders below " + target);
+    }
+
+    //True if one of the parent folders of the path is in folders
+    private static boolean isBelow(String path, Set<String> folders){
+        for(var end = path.lastIndexOf('/'); end > 0; end = path.lastIndexOf('/', end - 1))
+            if(folders.contains(path.substring(0, end)))
+                return true;
+        return false;
+    }
+
+    private void walk(List<Path> directories, Map<Path, List<Path>> filesByDirectory) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<>(){
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs){
+                directories.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs){
+                if(attrs.isRegularFile()){
+                    filesByDirectory.computeIfAbsent(file.getParent(), x -> new ArrayList<>()).add(file);
+                    addTotal(1, attrs.size());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex){
+                addTotal(1, 0);
+                failed(file.toString(), ex.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    //Creating an existing folder is no error
+    private boolean create(String remote) throws Exception {
+        var result = directoryService.create(remote);
+        return result.getValue() == FileSystemError.NONE.getValue() || directoryService.exists(remote);
+    }
+
+    private void write(Path file, String remote) throws Exception {
+        var traitItems = new TraitItem[0];
+        if(mode != SyncMode.ALL){
+            var attributes = FileAttributes.read(fileService, remote, mode);
+            if(attributes != null && !attributes.differs(file, mode)){
+                skipped();
+                return;
+            }
+            //The remote file gets the local timestamp, so it compares equal next time
+            traitItems = FileAttributes.timestampOf(file);
+        }
+
+        //Large files are read from a memory mapping
+        try(var data = counting(LocalFiles.openForUpload(file, bufferSize))){
+            var result = transfer.upload(remote, overwrite || mode != SyncMode.ALL, traitItems, data);
+            if(result.getValue() == FileSystemError.NONE.getValue())
+                done();
+            else
+                failed(remote, result);
+        }
+    }
+
+    //The controller always uses / as separator, independent of the host
+    private String toRemotePath(Path directory){
+        var sb = new StringBuilder(target);
+        for(var name : source.relativize(directory))
+            if(!name.toString().isEmpty())
+                sb.append('/').append(name);
+        return sb.toString();
+    }
+}
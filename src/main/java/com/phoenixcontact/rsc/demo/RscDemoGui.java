@@ -5,6 +5,7 @@
 // 
 package com.phoenixcontact.rsc.demo;
 
+import com.phoenixcontact.rsc.demo.Helper.SecureConnectionInfo;
 import com.phoenixcontact.rsc.demo.View.Login;
 import javafx.application.Application;
 import javafx.scene.Parent;
@@ -36,9 +37,11 @@ public class RscDemoGui extends Application {
         var viewController = loader.<Login>getController();
         Scene scene = new Scene(page);
 
-        //Preset ip, port, user, password from resources/config.txt
+        //Preset ip, port, user, password and the timeouts from resources/config.txt
         var config = loadConfig();
-        viewController.init(primaryStage, config[0], config[1], config[2], config[3]);
+        viewController.init(primaryStage, config[0], config[1], config[2], config[3],
+                parseTimeout(config[4], SecureConnectionInfo.DEFAULT_CONNECT_TIMEOUT),
+                parseTimeout(config[5], SecureConnectionInfo.DEFAULT_READ_TIMEOUT));
 
         //Display the login screen
         primaryStage.setTitle("RSC Demo App");
@@ -48,7 +51,7 @@ public class RscDemoGui extends Application {
 
     private String[] loadConfig() {
         //Load values for login from config.txt
-        String[] config = {"", "", "", ""};
+        String[] config = {"", "", "", "", "", ""};
         var file = RscDemoGui.class.getResource("/config.txt").getFile();
         try( var inStream = new FileInputStream(file)) {
 
@@ -63,4 +66,15 @@ public class RscDemoGui extends Application {
         }
         return config;
     }
+
+    //The timeouts are optional, the default is used when missing or invalid
+    private static int parseTimeout(String value, int defaultValue) {
+        try {
+            var timeout = Integer.parseInt(value);
+            return timeout > 0 ? timeout : defaultValue;
+        }
+        catch (NumberFormatException ex){
+            return defaultValue;
+        }
+    }
 }
@@ -8,15 +8,22 @@ package com.phoenixcontact.rsc.demo.View;
 import com.phoenixcontact.arp.system.rsc.ServiceManager;
 import com.phoenixcontact.rsc.demo.Helper.SecureConnectionInfo;
 import com.phoenixcontact.rsc.demo.RscDemoGui;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextField;
 import javafx.scene.input.MouseEvent;
 import javafx.stage.Stage;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+
 
 
 /**
@@ -26,7 +33,8 @@ import javafx.stage.Stage;
  * The view controller for the login screen loaded from Login.fxml
  * After the login button is clicked, this page is responsible for
  * loading the Main Screen. This can only proceed, when a connection
- * to a controller is established.
+ * to a controller is established. Connecting runs in the background
+ * and can be cancelled.
  *
  */
 public class Login {
@@ -40,9 +48,22 @@ public class Login {
     @FXML
     PasswordField passwordField;
 
+    @FXML Button loginButton;
+
+    @FXML Button cancelButton;
+
+    @FXML ProgressBar progressBar;
+
+    @FXML Label statusLabel;
+
     ServiceManager sm;
     Stage stage;
 
+    private int connectTimeout = SecureConnectionInfo.DEFAULT_CONNECT_TIMEOUT;
+    private int readTimeout = SecureConnectionInfo.DEFAULT_READ_TIMEOUT;
+    //The main view while it is connecting, null otherwise
+    private MainViewController pending;
+
     /**
      * Get initial values for the textboxes
      * 
@@ -53,7 +74,26 @@ public class Login {
      * @param password
      */
     public void init(Stage stage, String ip, String port, String user, String password){
+        init(stage, ip, port, user, password, SecureConnectionInfo.DEFAULT_CONNECT_TIMEOUT, SecureConnectionInfo.DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Get initial values for the textboxes and the timeouts of the connection
+     * 
+     * @param stage
+     * @param ip
+     * @param port
+     * @param user
+     * @param password
+     * @param connectTimeout
+     * Milliseconds to wait for the controller to accept the connection.
+     * @param readTimeout
+     * Milliseconds to wait for the answer of a service call.
+     */
+    public void init(Stage stage, String ip, String port, String user, String password, int connectTimeout, int readTimeout){
         this.stage = stage;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
 
         ipField.setText(ip);
         portField.setText(port);
@@ -69,28 +109,44 @@ public class Login {
      */
     @FXML
     private void loginClicked(MouseEvent event) {
+        if(pending != null)
+            return;
         try {
             var maybeInfo = SecureConnectionInfo.tryCreate(
                     ipField.getText(),
                     portField.getText(),
                     userField.getText(),
-                    passwordField.getText());
-
-            if (maybeInfo.isPresent()) {
-                var sci = maybeInfo.get();
-                var loader = new FXMLLoader(
-                        RscDemoGui.class.getResource("/Main.fxml"));
-                var page = (Parent) loader.load();
-                var viewController = loader.<MainViewController>getController();
-
-                Scene scene = new Scene(page);
-                viewController.init(stage, sci);
-
+                    passwordField.getText(),
+                    connectTimeout,
+                    readTimeout);
 
-
-                stage.setScene(scene);
-                stage.show();
+            if (!maybeInfo.isPresent()) {
+                statusLabel.setText("Invalid port");
+                return;
             }
+            var sci = maybeInfo.get();
+            var loader = new FXMLLoader(
+                    RscDemoGui.class.getResource("/Main.fxml"));
+            var page = (Parent) loader.load();
+            var viewController = loader.<MainViewController>getController();
+
+            Scene scene = new Scene(page);
+            pending = viewController;
+            setBusy(true);
+            viewController.init(stage, sci, this::showProgress).whenComplete((x, ex) -> Platform.runLater(() -> {
+                pending = null;
+                setBusy(false);
+                if(ex == null){
+                    stage.setScene(scene);
+                    stage.show();
+                }
+                else if(ex instanceof CancellationException)
+                    statusLabel.setText("Cancelled");
+                else{
+                    var cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    statusLabel.setText("Connection failed: " + cause.getMessage());
+                }
+            }));
         }
         catch (Exception ex){
             System.out.println(ex.getCause());
@@ -98,7 +154,25 @@ public class Login {
 
     }
 
+    /**
+     * Handles the cancel Button click
+     * 
+     * @param event
+     */
+    @FXML
+    private void cancelClicked(MouseEvent event) {
+        if(pending != null)
+            pending.cancel();
+    }
 
+    private void showProgress(String step, double done){
+        statusLabel.setText(step);
+        progressBar.setProgress(done);
+    }
 
-
+    private void setBusy(boolean busy){
+        loginButton.setDisable(busy);
+        cancelButton.setDisable(!busy);
+        progressBar.setVisible(busy);
+    }
 }
@@ -5,15 +5,14 @@
 // 
 package com.phoenixcontact.rsc.demo.View;
 
-import com.phoenixcontact.arp.system.rsc.ServiceManager;
 import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
 import com.phoenixcontact.rsc.demo.Helper.MessageEvent;
 import com.phoenixcontact.rsc.demo.Helper.Action;
 import com.phoenixcontact.rsc.demo.Helper.SecureConnectionInfo;
+import com.phoenixcontact.rsc.demo.RscController.ConnectionManager;
+import com.phoenixcontact.rsc.demo.RscController.ControllerConnection;
 import com.phoenixcontact.rsc.demo.RscDemoGui;
-import com.phoenixcontact.rsc.demo.View.Tabs.FileServiceTab;
-import com.phoenixcontact.rsc.demo.View.Tabs.GdsTab;
-import com.phoenixcontact.rsc.demo.View.Tabs.MainTab;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.EventHandler;
@@ -31,6 +30,13 @@ import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 
 /**
  * 
@@ -42,6 +48,19 @@ import javafx.stage.WindowEvent;
  */
 public class MainViewController {
 
+    /**
+     * Is notified about the steps of init on the FX thread.
+     */
+    public interface LoadProgress {
+        /**
+         * @param step
+         * A description of the current step.
+         * @param done
+         * Between 0 and 1, or ProgressBar.INDETERMINATE_PROGRESS while connecting.
+         */
+        void update(String step, double done);
+    }
+
     @FXML Label messageLabel;
     @FXML AnchorPane messagePane;
 
@@ -53,12 +72,29 @@ public class MainViewController {
     @FXML ListView<String> logListView;
 
 
+    //Detects connections, which were lost without a failing call
+    private static final long HEALTH_CHECK_PERIOD = 10_000;
+    //The display names and fxml files of the tabs. Can be easily extended by more tabs.
+    //Observe that those are pushed from the front, i.e. you have to insert them here in the reverse order
+    private static final String[][] TABS = {
+            {"GDS", "/GdsTab.fxml"},
+            {"File Service", "/FileServiceTab.fxml"},
+            {"Main Control", "/MainTab.fxml"}
+    };
+
     private ObservableList<String> logs;
-    private ServiceManager sm;
+    //Holds the connection of this session, more controllers can be added to it
+    private ConnectionManager connections;
+    private ControllerConnection connection;
     private SecureConnectionInfo sci;
     private CoreCommunication communication;
 
     private TabController[] tabControllers;
+    //Completes when all tabs are displayed
+    private CompletableFuture<Void> loading;
+    private LoadProgress progress;
+    //Set when init failed or was cancelled, tabs loaded afterwards are cleaned up at once. Guarded by this
+    private boolean discarded;
     private EventHandler<WindowEvent> closeStageHandler;
 
     private Stage stage;
@@ -76,7 +112,9 @@ public class MainViewController {
 
 
     /**
-     * initialized by the login screen
+     * initialized by the login screen.
+     * Connects and loads the tabs in the background, so the login screen stays responsive.
+     * The tabs are loaded in parallel as soon as the connection is established.
      * 
      * @param stage
      * The stage displaying the MainView. Necessary to make it possible to go back to the login screen.
@@ -85,29 +123,130 @@ public class MainViewController {
      * SecureConnectionInfo is used to establish a connection with the
      * controller via the service manager
      * 
-     * @throws Exception
-     * Is expected to throw to signal to the Login that the Main View could not be loaded.
-     * Most likely because the connection to the plc could not be established
+     * @param progress
+     * Is notified on the FX thread about each step.
+     * 
+     * @return
+     * Completes on the FX thread when all tabs are displayed. Completes exceptionally when the connection
+     * could not be established, most likely because the plc did not answer, or when cancel was called.
+     * The connection is closed in that case.
      */
-    public void init(Stage stage, SecureConnectionInfo sci) throws Exception{
+    public CompletableFuture<Void> init(Stage stage, SecureConnectionInfo sci, LoadProgress progress){
         //initialize local variables
-        this.sm = new ServiceManager();
-        sm.connect(sci.getConnectionInfo(), sci.getSecurityInfo());
-
         communication = new CoreCommunication(
                 this::MessageHandler, this::ErrorHandler, this::LogHandler, this::backToLogin);
-
         this.sci = sci;
         this.stage = stage;
+        this.progress = progress;
+        tabControllers = new TabController[TABS.length];
+
+        connections = new ConnectionManager(communication, ConnectionManager.DEFAULT_CONCURRENCY);
+        connection = connections.add(sci);
+        //one thread per tab, the first one connects
+        var loader = Executors.newFixedThreadPool(TABS.length, r -> {
+            var thread = new Thread(r, "tab-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        progress.update("Connecting to " + connection.getHost(), ProgressBar.INDETERMINATE_PROGRESS);
+        loading = CompletableFuture.runAsync(() -> {
+                    try{
+                        connection.connect();
+                    }
+                    catch (Exception ex){
+                        throw new CompletionException(ex);
+                    }
+                    //establish lost connections again, the tabs restore their state when notified by the connection
+                    connections.setAutoReconnect(true, ConnectionManager.DEFAULT_MIN_BACKOFF, ConnectionManager.DEFAULT_MAX_BACKOFF);
+                    connections.startHealthChecks(HEALTH_CHECK_PERIOD);
+                }, loader)
+                .thenCompose(x -> loadTabs(loader))
+                .thenAcceptAsync(this::showTabs, MainViewController::runOnFxThread);
+
+        loading.whenComplete((x, ex) -> {
+            //closing might wait for the connect in progress, so it must not run on the FX thread
+            if(ex != null)
+                loader.execute(this::discard);
+            loader.shutdown();
+        });
+        return loading;
+    }
+
+    /**
+     * Stops connecting or loading the tabs. The future returned by init completes with a CancellationException.
+     * @return
+     * False if init already completed.
+     */
+    public boolean cancel(){
+        return loading != null && loading.completeExceptionally(new CancellationException("Login cancelled"));
+    }
 
-        //load all tabs. Can be easily extended by more tabs. Observe that those are pushed from the front, i.e. you have to insert them here in the reverse order
+    //Loads all tabs in parallel
+    private CompletableFuture<Parent[]> loadTabs(Executor loader){
+        var pages = new Parent[TABS.length];
+        var loaded = new AtomicInteger();
+        var tasks = new CompletableFuture<?>[TABS.length];
+        reportProgress("Loading tabs", 0);
+        for(int i = 0; i < TABS.length; i++){
+            var index = i;
+            tasks[i] = CompletableFuture.runAsync(() -> {
+                pages[index] = loadTab(index);
+                reportProgress("Loaded " + TABS[index][0], (double) loaded.incrementAndGet() / TABS.length);
+            }, loader);
+        }
+        return CompletableFuture.allOf(tasks).thenApply(x -> pages);
+    }
+
+    /**
+     * Loads the fxml of the tab and initializes its controller. Runs on a loader thread,
+     * the page is not displayed yet. Work which continues on the FX thread is started by show.
+     * @param index
+     * The index in TABS
+     * @return
+     * The page or null, if the tab could not be loaded.
+     */
+    private Parent loadTab(int index) {
+        var resource = TABS[index][1];
+        try{
+        	var loader = new FXMLLoader(RscDemoGui.class.getResource(resource));
+            var page = (Parent) loader.load();
+            var viewController = loader.<TabController>getController();
+            viewController.init(connection, communication);
+            synchronized (this){
+                if(!discarded){
+                    tabControllers[index] = viewController;
+                    return page;
+                }
+            }
+            //cancelled while loading
+            ((Action)viewController::clean).silence().run();
+            return null;
+        }
+        catch(Exception ex){
+            runOnFxThread(() -> showError("Failed to load " + resource));
+            return null;
+        }
+    }
 
+    /**
+     * Adds the loaded tabs to the TabPane. Called on the FX thread.
+     * The tabs are pushed to the front of the TabPane, so TABS lists them in reverse order.
+     * @param pages
+     */
+    private void showTabs(Parent[] pages){
         var tabs = tabPane.getTabs();
-        tabControllers = new TabController[] {
-                this.<GdsTab>loadTab(tabs, "GDS", "/GdsTab.fxml"),
-                this.<FileServiceTab>loadTab(tabs, "File Service", "/FileServiceTab.fxml"),
-                this.<MainTab>loadTab(tabs, "Main Control" ,"/MainTab.fxml")
-        };
+        for(int i = 0; i < pages.length; i++){
+            if(pages[i] == null)
+                continue;
+            var tab = new Tab();
+            tab.setText(TABS[i][0]);
+            tab.setContent(pages[i]);
+            tabs.add(0, tab);
+        }
+        for(var tab : tabControllers)
+            if(tab != null)
+                tab.show();
         
         //Show the first tab
         tabPane.getSelectionModel().select(0);
@@ -120,36 +259,25 @@ public class MainViewController {
             if(closeStageHandler != null)
                 closeStageHandler.handle(event);
         });
+        progress.update("Connected to " + connection.getHost(), 1);
     }
 
-    /**
-     * Loads tabs into the TabPane and return the corresponding controller as a handle.
-     * The new Tab will be pushed to the front of the TabPane. This means that this method should be called in
-     * reverse order for the tabs you want to display
-     * @param tabs
-     * The list of tabs in the TabPane
-     * @param displayName
-     * The name that should be displayed at the top of the tabpane
-     * @param resource
-     * the name of the fxml file relative to the resource folder, starting with a slash.
-     * @return
-     */
-    private  <T extends TabController> T loadTab(ObservableList<Tab> tabs, String displayName, String resource) {
-        try{
-        	var loader = new FXMLLoader(RscDemoGui.class.getResource(resource));
-            var page = (Parent) loader.load();
-            var viewController = loader.<T>getController();
-            viewController.init(sm, communication);
-            var tab = new Tab();
-            tab.setText(displayName);
-            tab.setContent(page);
-            tabs.add(0, tab);
-            return viewController;
-        }
-        catch(Exception ex){
-            showError("Failed to load " + resource);
-            return null;
+    private void reportProgress(String step, double done){
+        runOnFxThread(() -> {
+            if(!loading.isDone())
+                progress.update(step, done);
+        });
+    }
+
+    //Cleans up after a failed or cancelled init, including the tabs which are still loading
+    private void discard(){
+        synchronized (this){
+            discarded = true;
         }
+        for(var tab : tabControllers)
+            if (tab != null)
+                ((Action)tab::clean).silence().run();
+        ((Action) connections::close).silence().run();
     }
 
     /**
@@ -169,7 +297,9 @@ public class MainViewController {
                     connectionInfo.getHost(),
                     Integer.toString(connectionInfo.getPort()),
                     securityInfo.getUserName(),
-                    new String(securityInfo.getPassword()));
+                    new String(securityInfo.getPassword()),
+                    sci.getConnectTimeout(),
+                    sci.getReadTimeout());
 
             clean();
 
@@ -191,8 +321,10 @@ public class MainViewController {
             if (tab != null)
                 ((Action)tab::clean).silence().run(); //clean tabs ignoring exceptions
 
-        Action closeServiceManager = () -> sm.close();
-        closeServiceManager.silence().run();
+        //closes the service manager of the session. Closing might wait for calls in progress,
+        //so it must not run on the FX thread. Not a daemon, so it completes before the application exits
+        var closing = connections;
+        new Thread(((Action) closing::close).silence(), "connection-closer").start();
 
         sci.clean();
         stage.setOnCloseRequest(closeStageHandler);
@@ -200,7 +332,7 @@ public class MainViewController {
 
 
     private void ErrorHandler(MessageEvent event) {
-        showError(event.getMessage());
+        runOnFxThread(() -> showError(event.getMessage()));
 
     }
     /**
@@ -219,7 +351,7 @@ public class MainViewController {
     }
 
     private void MessageHandler(MessageEvent event){
-        showMessage(event.getMessage());
+        runOnFxThread(() -> showMessage(event.getMessage()));
     }
 
     /**
@@ -238,7 +370,19 @@ public class MainViewController {
     }
 
     private void LogHandler(MessageEvent event) {
-        log(event.getMessage());
+        runOnFxThread(() -> log(event.getMessage()));
+    }
+
+    /**
+     * Messages are sent by the background threads of the services as well,
+     * but the controls may only be changed on the FX thread.
+     * @param action
+     */
+    private static void runOnFxThread(Runnable action){
+        if(Platform.isFxApplicationThread())
+            action.run();
+        else
+            Platform.runLater(action);
     }
 
     /**
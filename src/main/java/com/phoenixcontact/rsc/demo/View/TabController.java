@@ -5,7 +5,7 @@
 // 
 package com.phoenixcontact.rsc.demo.View;
 
-import com.phoenixcontact.arp.system.rsc.ServiceManager;
+import com.phoenixcontact.rsc.demo.RscController.ControllerConnection;
 import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
 
 
@@ -20,8 +20,9 @@ import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
 public interface TabController {
     /**
      * Supplies necessary objects, is called during startup by the MainViewController
-     * @param sm 
-     * The service manager interface can be used to get instances of the service interfaces.
+     * @param connection
+     * The connection to the controller can be used to get instances of the service interfaces.
+     * They stay valid when the connection is lost and established again.
      * 
      * @param communication
      * Shared Communication Infrastructure. Can be used to listen to or fire events, 
@@ -31,7 +32,14 @@ public interface TabController {
      * Might trow. Then the tab will not be displayed and the user will be notified that we 
      * failed to load this tab.
      */
-    void init(ServiceManager sm, CoreCommunication communication) throws Exception;
+    void init(ControllerConnection connection, CoreCommunication communication) throws Exception;
+
+    /**
+     * Is called on the FX thread after the tab was added to the TabPane. init runs on a background thread,
+     * so changes of the scene graph, which load data in the background and apply it on the FX thread, belong here.
+     */
+    default void show(){
+    }
 
     /**
      * Does necessary clean up. Will be called, if the application is closed or
@@ -6,18 +6,30 @@
 package com.phoenixcontact.rsc.demo.View.Tabs;
 
 import com.phoenixcontact.arp.system.commons.services.io.FileSystemEntry;
-import com.phoenixcontact.arp.system.rsc.ServiceManager;
 import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
-import com.phoenixcontact.rsc.demo.Helper.CustomFileSystemEntry;
+import com.phoenixcontact.rsc.demo.Helper.IndexedFile;
+import com.phoenixcontact.rsc.demo.Helper.PlaceholderEntry;
+import com.phoenixcontact.rsc.demo.Helper.RemoteTreeItem;
+import com.phoenixcontact.rsc.demo.Helper.SyncMode;
+import com.phoenixcontact.rsc.demo.Helper.TransferProgress;
+import com.phoenixcontact.rsc.demo.RscController.ControllerConnection;
 import com.phoenixcontact.rsc.demo.RscController.FileService;
+import com.phoenixcontact.rsc.demo.RscController.RemoteFileIndex;
 import com.phoenixcontact.rsc.demo.View.TabController;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.input.MouseEvent;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 
 /**
  * 
@@ -29,8 +41,20 @@ import javafx.scene.input.MouseEvent;
  *
  */
 public class FileServiceTab implements TabController {
+    //The folder searched by the find button
+    private static final String INDEX_ROOT = "/opt/plcnext";
+    //A search refreshes the index in the background, when it is older than this
+    private static final long INDEX_MAX_AGE = 60_000;
+    private static final int MAX_RESULTS = 1000;
+
     @FXML
     CheckBox overrideBox;
+    //Only transfer files that are new or changed
+    @FXML
+    CheckBox syncBox;
+    //Upload as zip archive and unpack downloaded .zip files
+    @FXML
+    CheckBox compressBox;
     @FXML
     TextField sourceBox;
 
@@ -38,44 +62,73 @@ public class FileServiceTab implements TabController {
 
     @FXML TextField folderNameBox;
 
+    @FXML Label progressLabel;
+
+    @FXML TextField searchBox;
+
+    @FXML ListView<IndexedFile> searchResults;
+
 
     @FXML
     TreeView<FileSystemEntry> explorer;
-    TreeItem<FileSystemEntry> rootItem;
+    RemoteTreeItem rootItem;
 
     FileService controller;
     CoreCommunication communication;
+    //Transfers and the other calls of the file service run on this thread, so the ui stays responsive
+    private ExecutorService worker;
+    //Finds files without expanding the tree, built on the first search from the names of the files
+    private RemoteFileIndex index;
 
-    @FXML
-    private void initialize() {
-        var entry = new CustomFileSystemEntry();
-        entry.setPath("/");
-        entry.setDirectory(true);
-        entry.setFile(false);
-        rootItem = new TreeItem<>(entry);
+    @Override
+    public void init(ControllerConnection connection, CoreCommunication communication) throws Exception{
+        this.communication = communication;
+        controller = new FileService(connection, communication);
+        worker = Executors.newSingleThreadExecutor();
+        index = new RemoteFileIndex(connection, communication, INDEX_ROOT, RemoteFileIndex.DEFAULT_CONCURRENCY, false);
     }
 
+    //The tree items may only be used on the FX thread, their entries are loaded in the background
     @Override
-    public void init(ServiceManager sm, CoreCommunication communication) throws Exception{
-        this.communication = communication;
-        controller = new FileService(sm, communication);
-        controller.addFilesToNode(rootItem);
+    public void show(){
+        //Folders load their entries when they are expanded
+        rootItem = controller.createRootItem("/");
         explorer.setRoot(rootItem);
-        rootItem.expandedProperty().addListener(x -> controller.addFilesToNode(rootItem));
 
-        //Expand path to /opt/plcnext when present
+        //Expand path to /opt/plcnext when present, the folders are loaded in the background
         rootItem.setExpanded(true);
-        rootItem.getChildren()
-                .stream()
-                .filter(x -> x.getValue().getPath().equals("/opt"))
-                .findFirst()
-                .ifPresent(x -> {
-                    x.setExpanded(true);
-                    x.getChildren()
-                            .stream()
-                            .filter(y -> y.getValue().getPath().equals("/opt/plcnext"))
-                            .findFirst().ifPresent(y -> y.setExpanded(true));
-                });
+        expandChild(rootItem, "/opt").thenAccept(opt -> {
+            if(opt != null)
+                expandChild(opt, "/opt/plcnext");
+        });
+    }
+
+    /**
+     * Expands the child with the path, as soon as the entries of the node are loaded.
+     * @param node
+     * @param path
+     * @return
+     * The child or null if the node has no child with the path.
+     */
+    private CompletableFuture<RemoteTreeItem> expandChild(RemoteTreeItem node, String path){
+        return node.ensureLoaded().thenApply(x -> {
+            var child = (RemoteTreeItem) node.getChildren()
+                    .stream()
+                    .filter(y -> y instanceof RemoteTreeItem && y.getValue().getPath().equals(path))
+                    .findFirst()
+                    .orElse(null);
+            if(child != null)
+                child.setExpanded(true);
+            return child;
+        });
+    }
+
+    //Loading and paging placeholders are no files and can not be selected for an operation
+    private TreeItem<FileSystemEntry> getSelectedEntry(){
+        var selectedItem = explorer.getSelectionModel().getSelectedItem();
+        if(selectedItem == null || selectedItem.getValue() instanceof PlaceholderEntry)
+            return null;
+        return selectedItem;
     }
 
     /**
@@ -83,12 +136,13 @@ public class FileServiceTab implements TabController {
      * The path to the file on the host is specified in the sourceBox
      * The element to upload to is specified in the treeview. If it is a folder the file is added below with the original name.
      * If it is a file, the file needs to have the same name and the overwrite must be marked
-     * Uploading folders is currently not supported.
+     * Folders are uploaded in the background and can be cancelled.
+     * With compress selected, the source is packed into a zip archive while it is uploaded. The archive is stored as it is.
      * @param event
      */
     @FXML
     private void upload(MouseEvent event){
-        var selectedItem = explorer.getSelectionModel().getSelectedItem();
+        var selectedItem = getSelectedEntry();
         if (selectedItem == null) {
             communication.error("No item selected to copy to");
             return;
@@ -101,19 +155,34 @@ public class FileServiceTab implements TabController {
             return;
         }
 
-        controller.upload(source, selectedItem.getValue(), overrideBox.isSelected());
-        refresh(selectedItem);
+        var entry = selectedItem.getValue();
+        var overwrite = overrideBox.isSelected();
+        var compress = compressBox.isSelected();
+        controller.setSyncMode(syncBox.isSelected() ? SyncMode.CHANGED : SyncMode.ALL);
+        progressLabel.setText("");
+        //The plc has no way to unpack the archive, the user has to know it is no folder upload
+        if(compress)
+            communication.message("The source is uploaded as one zip archive, it is not unpacked on the plc");
+        worker.execute(() -> {
+            if(compress)
+                controller.uploadArchive(source, entry, overwrite, this::showProgress);
+            else
+                controller.upload(source, entry, overwrite, this::showProgress);
+            Platform.runLater(() -> refresh(selectedItem));
+        });
 
 
     }
 
     /**
      * Trigger download from plc to host pc
+     * Folders are downloaded in the background and can be cancelled.
+     * With compress selected, a .zip file is unpacked into the destination while it is downloaded.
      * @param mouseEvent
      */
     @FXML
     private void download(MouseEvent mouseEvent) {
-        var selectedItem = explorer.getSelectionModel().getSelectedItem();
+        var selectedItem = getSelectedEntry();
         if (selectedItem == null) {
             communication.error("No item selected to copy to");
             return;
@@ -126,7 +195,14 @@ public class FileServiceTab implements TabController {
             return;
         }
 
-        controller.download(selectedItem.getValue(), destination, overrideBox.isSelected());
+        var entry = selectedItem.getValue();
+        var overwrite = overrideBox.isSelected();
+        controller.setSyncMode(syncBox.isSelected() ? SyncMode.CHANGED : SyncMode.ALL);
+        progressLabel.setText("");
+        if(compressBox.isSelected() && entry.isFile() && entry.getPath().endsWith(".zip"))
+            worker.execute(() -> controller.downloadArchive(entry, destination, overwrite, this::showProgress));
+        else
+            worker.execute(() -> controller.download(entry, destination, overwrite, this::showProgress));
     }
 
     /**
@@ -137,15 +213,17 @@ public class FileServiceTab implements TabController {
      */
     @FXML
     private void createFolder(MouseEvent event){
-        var selectedItem = explorer.getSelectionModel().getSelectedItem();
+        var selectedItem = getSelectedEntry();
         //there is a item selected
         if (selectedItem != null){
             var entry = selectedItem.getValue();
             var name = folderNameBox.getText();
             if(name.length() > 0) {
-                controller.createFolder(entry, name);
-                //refresh
-                refresh(selectedItem);
+                //The service is called on the worker, the tree is refreshed on the FX thread
+                worker.execute(() -> {
+                    controller.createFolder(entry, name);
+                    Platform.runLater(() -> refresh(selectedItem));
+                });
             }
             else
                 communication.error("Name box may not be empty");
@@ -154,15 +232,99 @@ public class FileServiceTab implements TabController {
             communication.error("Select a file in the explorer for removal");
     }
 
+    /**
+     * Cancel the running upload or download
+     * @param mouseEvent
+     */
+    @FXML
+    private void cancel(MouseEvent mouseEvent){
+        controller.cancelTransfer();
+    }
+
+    //Called from the transfer threads
+    private void showProgress(TransferProgress progress){
+        Platform.runLater(() -> progressLabel.setText(progress.toString()));
+    }
+
     /**
      * Refresh treeview below an entry
+     * Expanded subfolders stay expanded and are not loaded again.
      * @param entry
      */
     private void refresh(TreeItem<?> entry){
-        if(entry.isExpanded()){
-            entry.setExpanded(false);
-            entry.setExpanded(true);
+        if(entry instanceof RemoteTreeItem)
+            ((RemoteTreeItem) entry).reload();
+    }
+
+    /**
+     * Search the files below INDEX_ROOT
+     * The query is a glob like *.log, the beginning of a path or a part of a name.
+     * The first search builds the index in the background, later ones are answered from the index at once.
+     * @param mouseEvent
+     */
+    @FXML
+    private void search(MouseEvent mouseEvent){
+        var query = searchBox.getText();
+        if(query.length() == 0){
+            communication.error("The search text must not be empty");
+            return;
+        }
+        if(index.getLastUpdate() == 0){
+            progressLabel.setText("Indexing " + index.getRoot() + "...");
+            index.refresh().thenRun(() -> Platform.runLater(() -> showResults(query)));
+            return;
         }
+        showResults(query);
+        //Changes are found by the next search
+        if(System.currentTimeMillis() - index.getLastUpdate() > INDEX_MAX_AGE)
+            index.refresh();
+    }
+
+    private void showResults(String query){
+        var results = index.search(query, MAX_RESULTS);
+        searchResults.getItems().setAll(results);
+        progressLabel.setText(results.size() + " of " + index.size() + " entries found");
+        //The index only holds names and paths, the sizes of the hits are shown when they are read
+        index.loadAttributes(results).thenAccept(files -> Platform.runLater(() -> {
+            //unless another search replaced the results meanwhile
+            if(searchResults.getItems().equals(results)){
+                var selected = searchResults.getSelectionModel().getSelectedIndex();
+                searchResults.getItems().setAll(files);
+                searchResults.getSelectionModel().select(selected);
+            }
+        }));
+    }
+
+    /**
+     * Select a search result in the tree view on double click
+     * @param mouseEvent
+     */
+    @FXML
+    private void showResult(MouseEvent mouseEvent){
+        var selected = searchResults.getSelectionModel().getSelectedItem();
+        if(mouseEvent.getClickCount() == 2 && selected != null)
+            reveal(rootItem, selected.getPath());
+    }
+
+    //Expands the folders down to the path and selects it
+    private void reveal(RemoteTreeItem node, String path){
+        node.setExpanded(true);
+        node.ensureLoaded().thenAccept(x -> {
+            for(var child : node.getChildren()){
+                var childPath = child.getValue().getPath();
+                if(childPath.equals(path)){
+                    explorer.getSelectionModel().select(child);
+                    explorer.scrollTo(explorer.getRow(child));
+                    return;
+                }
+                if(child instanceof RemoteTreeItem && path.startsWith(childPath + "/")){
+                    reveal((RemoteTreeItem) child, path);
+                    return;
+                }
+            }
+            //e.g. on a later page of a large folder
+            communication.error(path + " is not shown in the tree");
+        });
     }
 
     /**
@@ -171,13 +333,14 @@ public class FileServiceTab implements TabController {
      */
     @FXML
     private void remove(MouseEvent mouseEvent){
-        var selectedItem = explorer.getSelectionModel().getSelectedItem();
+        var selectedItem = getSelectedEntry();
         if (selectedItem != null){
             var entry = selectedItem.getValue();
-            controller.remove(entry);
-
-            //refresh
-            refresh(selectedItem.getParent());
+            var parent = selectedItem.getParent();
+            worker.execute(() -> {
+                controller.remove(entry);
+                Platform.runLater(() -> refresh(parent));
+            });
         }
         else
             communication.error("Select a file in the explorer for removal");
@@ -186,6 +349,11 @@ public class FileServiceTab implements TabController {
 
     @Override
     public void clean() {
-        //No special clean up necessary here
+        if(controller != null)
+            controller.close();
+        if(index != null)
+            index.cancel();
+        if(worker != null)
+            worker.shutdown();
     }
 }
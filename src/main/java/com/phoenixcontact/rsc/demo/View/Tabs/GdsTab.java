@@ -5,8 +5,8 @@
 // 
 package com.phoenixcontact.rsc.demo.View.Tabs;
 
-import com.phoenixcontact.arp.system.rsc.ServiceManager;
 import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import com.phoenixcontact.rsc.demo.RscController.ControllerConnection;
 import com.phoenixcontact.rsc.demo.RscController.GdsServices;
 import com.phoenixcontact.rsc.demo.Helper.SubscriptionView;
 import com.phoenixcontact.rsc.demo.View.TabController;
@@ -17,6 +17,9 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.input.MouseEvent;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * 
  * @author andreniggemann
@@ -46,6 +49,8 @@ public class GdsTab implements TabController {
 
     private CoreCommunication communication;
     private GdsServices controller;
+    //Runs the calls to the controller, so the ui does not wait for the plc. One thread keeps the order of the user actions.
+    private ExecutorService worker;
 
     /**
      * Initialization after loading fxml
@@ -67,10 +72,11 @@ public class GdsTab implements TabController {
      * Initialisation from the MainViewController to share common data.
      */
     @Override
-    public void init(ServiceManager sm, CoreCommunication communication) throws Exception {
+    public void init(ControllerConnection connection, CoreCommunication communication) throws Exception {
         this.communication = communication;
 
-        controller = new GdsServices(sm, communication, gdsSubs);
+        controller = new GdsServices(connection, communication, gdsSubs);
+        worker = Executors.newSingleThreadExecutor();
         subscriptionTable.getSelectionModel().setSelectionMode(SelectionMode.SINGLE);
     }
     
@@ -80,6 +86,7 @@ public class GdsTab implements TabController {
     @Override
     public void clean() throws Exception{
         
+        worker.shutdown();
         controller.clean();
     }
 
@@ -94,7 +101,7 @@ public class GdsTab implements TabController {
     private void subscribe(MouseEvent mouseEvent) {
         var uri = uriBox.getText();
         if(uri != null && uri.length() > 0){
-            controller.subscribe(uri);
+            worker.execute(() -> controller.subscribe(uri));
         }
         else {
             communication.error("No uri entered to subscribe to");
@@ -109,7 +116,7 @@ public class GdsTab implements TabController {
     private void unsubscribe(MouseEvent mouseEvent) {
         var selected = subscriptionTable.getSelectionModel().getSelectedItem();
         if(selected != null) {
-            controller.unsubscribe(selected);
+            worker.execute(() -> controller.unsubscribe(selected));
         }
         else {
             communication.error("No subscribed Item selected to unsubscribe from");
@@ -127,7 +134,8 @@ public class GdsTab implements TabController {
     private void write(MouseEvent mouseEvent) {
         var selected = subscriptionTable.getSelectionModel().getSelectedItem();
         if(selected != null){
-            controller.write(selected, writeValueBox.getText());
+            var valueString = writeValueBox.getText();
+            worker.execute(() -> controller.write(selected, valueString));
         }
         else {
             communication.error("No item selected to write to");
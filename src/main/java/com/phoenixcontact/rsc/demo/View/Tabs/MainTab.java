@@ -6,19 +6,21 @@
 package com.phoenixcontact.rsc.demo.View.Tabs;
 
 import com.phoenixcontact.arp.plc.domain.services.PlcState;
-import com.phoenixcontact.arp.system.rsc.ServiceManager;
+import com.phoenixcontact.rsc.demo.Helper.ConnectionState;
 import com.phoenixcontact.rsc.demo.Helper.CoreCommunication;
+import com.phoenixcontact.rsc.demo.RscController.ControllerConnection;
 import com.phoenixcontact.rsc.demo.RscController.MainService;
+import com.phoenixcontact.rsc.demo.RscController.PlcStateMonitor;
 import com.phoenixcontact.rsc.demo.View.TabController;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
 import javafx.scene.input.MouseEvent;
 
-import java.util.Iterator;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 /**
  * 
@@ -37,46 +39,55 @@ public class MainTab implements TabController {
 
     CoreCommunication communication;
     MainService controller;
+    private ControllerConnection connection;
 
-    private ScheduledThreadPoolExecutor updater;
-    private ScheduledFuture updaterCallback;
+    //Shared with all other consumers of the plc state
+    private PlcStateMonitor monitor;
+    private final PlcStateMonitor.Listener stateListener = this::refresh;
     private boolean isRunning;
+    //Notifies the start and stop listeners in the order of the state changes
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "plc-state-changes");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Override
-    public void init(ServiceManager sm, CoreCommunication communication) throws Exception {
-        controller = new MainService(sm, communication);
+    public void init(ControllerConnection connection, CoreCommunication communication) throws Exception {
+        controller = new MainService(connection, communication);
         this.communication = communication;
-        updater = new ScheduledThreadPoolExecutor(1);
-        updaterCallback = updater.scheduleAtFixedRate(
-                this::refresh, 20, 500, TimeUnit.MILLISECONDS);
+        this.connection = connection;
+        monitor = connection.getPlcStateMonitor();
+        monitor.addListener(stateListener);
     }
 
 
     @Override
     public void clean() {
-        updaterCallback.cancel(false);
-        updater.shutdown();
+        monitor.removeListener(stateListener);
+        notifier.shutdown();
+        controller.clean();
     }
 
-    //Refresh the state label with the current state of the plc
-    private  void refresh() {
-        Iterator<PlcState> states;
-
-        states = controller.getStatus().getFlags().iterator();
-
-        var firstState = states.next();
-        var newRunningState = firstState.getValue() == PlcState.RUNNING.getValue();
-        if (newRunningState && !isRunning)
-            communication.start();
-        else if (!newRunningState && isRunning)
-            communication.stop();
-        isRunning = newRunningState;
-
-        var sb = new StringBuilder();
-        sb.append(firstState.toString());
-        states.forEachRemaining(flag -> sb.append(", " + flag.toString()));
+    //Refresh the state label, called by the monitor only when the state of the plc changed
+    private void refresh(List<PlcState> previous, List<PlcState> states) {
+        if(states == PlcStateMonitor.UNKNOWN && previous != null)
+            communication.error("Retrieving status failed");
+
+        //An unknown state is no stop, e.g. while the connection is lost the subscriptions are kept to be restored
+        if(states != PlcStateMonitor.UNKNOWN && connection.getState() == ConnectionState.CONNECTED){
+            //The listeners call the plc, so they run on the notifier instead of the thread of the monitor
+            var newRunningState = PlcStateMonitor.isRunning(states);
+            if (newRunningState && !isRunning)
+                notifier.execute(communication::start);
+            else if (!newRunningState && isRunning)
+                notifier.execute(communication::stop);
+            isRunning = newRunningState;
+        }
+
+        var text = states.stream().map(PlcState::toString).collect(Collectors.joining(", "));
         Platform.runLater(() ->
-            stateLabel.setText(sb.toString()));
+            stateLabel.setText(text));
     }
 
     @FXML